@@ -22,6 +22,14 @@ public abstract class BaseDiscCache implements DiscCacheAware {
 		return new File(cacheDir, fileName);
 	}
 
+	/**
+	 * Checks whether file for incoming key exists in cache. Unlike {@link #get(String)} it doesn't mark file as used.
+	 */
+	public boolean contains(String key) {
+		String fileName = keyToFileName(key);
+		return new File(cacheDir, fileName).exists();
+	}
+
 	@Override
 	public void clear() {
 		File[] files = cacheDir.listFiles();
@@ -0,0 +1,148 @@
+package com.nostra13.universalimageloader.cache.disc.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
+
+/**
+ * Disc cache of decoded bitmaps limited by total cache size. Bitmap pixels are stored uncompressed (with small header:
+ * width, height, {@link Config config} and row bytes) and are copied into bitmap through memory-mapped file, so loading
+ * of cached bitmap doesn't need image decoding. It's appropriate for small frequently used images (i.e. thumbnails)
+ * which are decoded slowly from original images.<br />
+ * Bitmaps must be saved and loaded by {@link #save(String, Bitmap)} and {@link #load(String, BitmapPool)}.
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @see TotalSizeLimitedDiscCache
+ */
+public class RawBitmapDiscCache extends TotalSizeLimitedDiscCache {
+
+	/** "UILR" */
+	private static final int MAGIC = 0x55494C52;
+	/** Magic, width, height, config, row bytes */
+	private static final int HEADER_SIZE = 5 * 4;
+	private static final String TEMP_FILE_POSTFIX = ".tmp";
+
+	/**
+	 * @param cacheDir
+	 *            Directory for file caching. <b>Important:</b> Specify separate folder for cached files. It's needed
+	 *            for right cache limit work.
+	 * @param maxCacheSize
+	 *            Maximum cache directory size (in bytes). If cache size exceeds this limit then file with the most
+	 *            oldest last usage date will be deleted.
+	 */
+	public RawBitmapDiscCache(File cacheDir, int maxCacheSize) {
+		super(cacheDir, maxCacheSize);
+	}
+
+	/**
+	 * Saves bitmap pixels in cache
+	 * 
+	 * @return <b>true</b> - if bitmap was saved; <b>false</b> - if bitmap can't be saved (i.e. its config is unknown or
+	 *         cache file can't be replaced)
+	 * @throws IOException
+	 */
+	public boolean save(String key, Bitmap bitmap) throws IOException {
+		Config config = bitmap.getConfig();
+		if (config == null || bitmap.isRecycled()) {
+			return false;
+		}
+		int rowBytes = bitmap.getRowBytes();
+		int pixelsSize = rowBytes * bitmap.getHeight();
+
+		File file = get(key);
+		File tempFile = new File(file.getPath() + TEMP_FILE_POSTFIX);
+		boolean saved = false;
+		try {
+			RandomAccessFile raf = new RandomAccessFile(tempFile, "rw");
+			try {
+				MappedByteBuffer buffer = raf.getChannel().map(MapMode.READ_WRITE, 0, HEADER_SIZE + pixelsSize);
+				buffer.putInt(MAGIC);
+				buffer.putInt(bitmap.getWidth());
+				buffer.putInt(bitmap.getHeight());
+				buffer.putInt(config.ordinal());
+				buffer.putInt(rowBytes);
+				bitmap.copyPixelsToBuffer(buffer);
+			} finally {
+				raf.close();
+			}
+			saved = tempFile.renameTo(file);
+		} finally {
+			if (!saved) {
+				tempFile.delete();
+			}
+		}
+		if (saved) {
+			put(key, file);
+		}
+		return saved;
+	}
+
+	/**
+	 * Returns size of bitmap pixels cached for key (0 - if there is no cached bitmap). Usage of cached file isn't
+	 * recorded.
+	 */
+	public int getBitmapSize(String key) {
+		long fileSize = new File(getCacheDir(), keyToFileName(key)).length();
+		return fileSize < HEADER_SIZE ? 0 : (int) (fileSize - HEADER_SIZE);
+	}
+
+	/**
+	 * Loads bitmap from cache
+	 * 
+	 * @param bitmapPool
+	 *            Pool which bitmap for loading is taken from (if pool contains appropriate bitmap). Can be null.
+	 * @return Loaded bitmap or <b>null</b> if there is no cached bitmap for the key or cached file is broken
+	 * @throws IOException
+	 */
+	public Bitmap load(String key, BitmapPool bitmapPool) throws IOException {
+		File file = get(key);
+		if (!file.exists()) {
+			return null;
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long fileSize = channel.size();
+			if (fileSize < HEADER_SIZE) {
+				return null;
+			}
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, fileSize);
+			if (buffer.getInt() != MAGIC) {
+				return null;
+			}
+			int width = buffer.getInt();
+			int height = buffer.getInt();
+			int configIndex = buffer.getInt();
+			int rowBytes = buffer.getInt();
+			Config[] configs = Config.values();
+			if (width <= 0 || height <= 0 || configIndex < 0 || configIndex >= configs.length || buffer.remaining() != (long) rowBytes * height) {
+				return null;
+			}
+
+			Config config = configs[configIndex];
+			Bitmap bitmap = bitmapPool == null ? null : bitmapPool.get(width, height, config);
+			if (bitmap == null) {
+				bitmap = Bitmap.createBitmap(width, height, config);
+			}
+			if (bitmap.getRowBytes() != rowBytes) {
+				if (bitmapPool != null) {
+					bitmapPool.put(bitmap);
+				}
+				return null;
+			}
+			bitmap.copyPixelsFromBuffer(buffer);
+			return bitmap;
+		} finally {
+			raf.close();
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package com.nostra13.universalimageloader.cache.memory;
 
 import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -8,46 +9,106 @@ import java.util.Map;
 
 /**
  * Base memory cache. Implements common functionality for memory cache. Provides object references (
- * {@linkplain Reference not strong}) storing.
+ * {@linkplain Reference not strong}) storing.<br />
+ * References of collected objects are removed from cache on every cache operation, so count of stored keys is bounded
+ * by count of live objects. It works only for references created by {@link #createReference(Object, ReferenceQueue)},
+ * so subclasses should override it.
  * 
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  */
 public abstract class BaseMemoryCache<K, V> implements MemoryCacheAware<K, V> {
 
-	/** Stores not strong references to objects */
+	/** Stores not strong references to objects. Its lock guards {@link #referenceKeys} too. */
 	private final Map<K, Reference<V>> softMap = Collections.synchronizedMap(new HashMap<K, Reference<V>>());
+	/** Keys of references stored in {@link #softMap} (references are compared by identity) */
+	private final Map<Reference<V>, K> referenceKeys = new HashMap<Reference<V>, K>();
+	/** Receives references of collected objects */
+	private final ReferenceQueue<V> referenceQueue = new ReferenceQueue<V>();
 
 	@Override
 	public V get(K key) {
 		V result = null;
-		Reference<V> reference = softMap.get(key);
-		if (reference != null) {
-			result = reference.get();
+		synchronized (softMap) {
+			purgeCollectedReferences();
+			Reference<V> reference = softMap.get(key);
+			if (reference != null) {
+				result = reference.get();
+			}
 		}
 		return result;
 	}
 
 	@Override
 	public boolean put(K key, V value) {
-		softMap.put(key, createReference(value));
+		Reference<V> reference = createReference(value, referenceQueue);
+		synchronized (softMap) {
+			purgeCollectedReferences();
+			Reference<V> oldReference = softMap.put(key, reference);
+			if (oldReference != null) {
+				referenceKeys.remove(oldReference);
+			}
+			referenceKeys.put(reference, key);
+		}
 		return true;
 	}
 
 	@Override
 	public void remove(K key) {
-		softMap.remove(key);
+		synchronized (softMap) {
+			purgeCollectedReferences();
+			Reference<V> reference = softMap.remove(key);
+			if (reference != null) {
+				referenceKeys.remove(reference);
+			}
+		}
 	}
 
 	@Override
 	public Collection<K> keys() {
+		synchronized (softMap) {
+			purgeCollectedReferences();
+		}
 		return softMap.keySet();
 	}
 
 	@Override
 	public void clear() {
-		softMap.clear();
+		synchronized (softMap) {
+			softMap.clear();
+			referenceKeys.clear();
+		}
+	}
+
+	/** Returns count of stored objects which weren't collected by GC yet */
+	public int getReferenceCount() {
+		synchronized (softMap) {
+			purgeCollectedReferences();
+			return softMap.size();
+		}
+	}
+
+	/** Removes references of collected objects from cache. Must be called under {@link #softMap} lock. */
+	private void purgeCollectedReferences() {
+		Reference<? extends V> reference;
+		while ((reference = referenceQueue.poll()) != null) {
+			K key = referenceKeys.remove(reference);
+			if (key != null) { // Otherwise reference was removed from cache already
+				softMap.remove(key);
+			}
+		}
 	}
 
 	/** Creates {@linkplain Reference not strong} reference of value */
 	protected abstract Reference<V> createReference(V value);
+
+	/**
+	 * Creates {@linkplain Reference not strong} reference of value registered with passed queue, so reference is
+	 * removed from cache after value collection. Is called on every {@link #put(Object, Object) put}.<br />
+	 * <b>NOTE:</b> Subclasses must override this method to register created reference with the queue. By default
+	 * reference is created by {@link #createReference(Object)} without registration, so it isn't removed from cache
+	 * until its key is reused.
+	 */
+	protected Reference<V> createReference(V value, ReferenceQueue<V> queue) {
+		return createReference(value);
+	}
 }
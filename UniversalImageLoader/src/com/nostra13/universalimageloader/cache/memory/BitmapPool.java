@@ -0,0 +1,205 @@
+package com.nostra13.universalimageloader.cache.memory;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+
+/**
+ * Pool of {@link Bitmap bitmaps} which can be reused for decoding of new images (instead of allocation of new bitmaps).
+ * Pooled bitmaps are grouped by their width, height and {@link Config config}. Total size of pooled bitmaps doesn't
+ * exceed size limit: the oldest pooled bitmap is dropped when limit is exceeded.<br />
+ * Bitmap comes into the pool when it is {@linkplain #offer(Bitmap) offered} (i.e. it was evicted from memory cache) and
+ * it isn't displayed anymore: displays of bitmap are counted by {@link #retain(Bitmap)} and {@link #release(Bitmap)}.
+ * Counts are stored weakly, so collected bitmaps aren't kept by the pool. Only mutable bitmaps are pooled.
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @see EvictionListener
+ */
+public class BitmapPool implements EvictionListener<Bitmap> {
+
+	private final int sizeLimit;
+
+	private int poolSize = 0;
+
+	/** Pooled bitmaps grouped by size and config */
+	private final Map<BucketKey, LinkedList<Bitmap>> buckets = new HashMap<BucketKey, LinkedList<Bitmap>>();
+	/** Pooled bitmaps in order of pooling (the oldest is the first) */
+	private final Map<Bitmap, BucketKey> pooledBitmaps = new LinkedHashMap<Bitmap, BucketKey>();
+	/**
+	 * Reference counts of bitmaps which were retained. Count is kept after bitmap release, so repeated displaying of
+	 * bitmap doesn't allocate new count.
+	 */
+	private final Map<Bitmap, ReferenceCount> referenceCounts = new WeakHashMap<Bitmap, ReferenceCount>();
+
+	/**
+	 * @param sizeLimit
+	 *            Maximum total size of pooled bitmaps (in bytes)
+	 */
+	public BitmapPool(int sizeLimit) {
+		this.sizeLimit = sizeLimit;
+	}
+
+	/**
+	 * Returns pooled bitmap of passed size and config and removes it from the pool. Returns <b>null</b> if there is no
+	 * appropriate bitmap in pool.
+	 */
+	public synchronized Bitmap get(int width, int height, Config config) {
+		LinkedList<Bitmap> bucket = buckets.get(new BucketKey(width, height, config));
+		if (bucket == null || bucket.isEmpty()) {
+			return null;
+		}
+		Bitmap bitmap = bucket.removeLast();
+		pooledBitmaps.remove(bitmap);
+		poolSize -= getSize(bitmap);
+		return bitmap;
+	}
+
+	/** Puts bitmap into pool directly (bitmap must not be used anywhere) */
+	public synchronized void put(Bitmap bitmap) {
+		if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || pooledBitmaps.containsKey(bitmap)) {
+			return;
+		}
+		int bitmapSize = getSize(bitmap);
+		if (bitmapSize > sizeLimit) {
+			return;
+		}
+		while (poolSize + bitmapSize > sizeLimit) {
+			removeOldest();
+		}
+
+		BucketKey key = new BucketKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+		LinkedList<Bitmap> bucket = buckets.get(key);
+		if (bucket == null) {
+			bucket = new LinkedList<Bitmap>();
+			buckets.put(key, bucket);
+		}
+		bucket.add(bitmap);
+		pooledBitmaps.put(bitmap, key);
+		poolSize += bitmapSize;
+	}
+
+	/** Increments display count of bitmap */
+	public synchronized void retain(Bitmap bitmap) {
+		if (bitmap == null) return;
+		ReferenceCount referenceCount = referenceCounts.get(bitmap);
+		if (referenceCount == null) {
+			referenceCount = new ReferenceCount();
+			referenceCounts.put(bitmap, referenceCount);
+		}
+		referenceCount.count++;
+	}
+
+	/** Decrements display count of bitmap. If bitmap isn't displayed anymore and it was offered then it's pooled. */
+	public synchronized void release(Bitmap bitmap) {
+		if (bitmap == null) return;
+		ReferenceCount referenceCount = referenceCounts.get(bitmap);
+		if (referenceCount == null || referenceCount.count == 0) return;
+		referenceCount.count--;
+		if (referenceCount.count == 0 && referenceCount.offered) {
+			referenceCounts.remove(bitmap);
+			put(bitmap);
+		}
+	}
+
+	/**
+	 * Offers bitmap for pooling. Bitmap is pooled immediately if it isn't displayed, otherwise it's pooled when it is
+	 * {@linkplain #release(Bitmap) released}.
+	 */
+	public synchronized void offer(Bitmap bitmap) {
+		if (bitmap == null) return;
+		ReferenceCount referenceCount = referenceCounts.get(bitmap);
+		if (referenceCount != null && referenceCount.count > 0) {
+			referenceCount.offered = true;
+		} else {
+			referenceCounts.remove(bitmap);
+			put(bitmap);
+		}
+	}
+
+	/** Is called by memory cache. Offers evicted bitmap for pooling. */
+	@Override
+	public void onEvicted(Bitmap value) {
+		offer(value);
+	}
+
+	/**
+	 * Removes all pooled bitmaps and forgets offered bitmaps. Reference counts are removed too except counts of bitmaps
+	 * which are displayed now (otherwise displayed bitmap would be pooled on its eviction from memory cache).
+	 */
+	public synchronized void clear() {
+		buckets.clear();
+		pooledBitmaps.clear();
+		poolSize = 0;
+		Iterator<ReferenceCount> it = referenceCounts.values().iterator();
+		while (it.hasNext()) {
+			ReferenceCount referenceCount = it.next();
+			if (referenceCount.count == 0) {
+				it.remove();
+			} else {
+				referenceCount.offered = false;
+			}
+		}
+	}
+
+	/** Returns total size of pooled bitmaps (in bytes) */
+	public synchronized int getSize() {
+		return poolSize;
+	}
+
+	private void removeOldest() {
+		Iterator<Map.Entry<Bitmap, BucketKey>> it = pooledBitmaps.entrySet().iterator();
+		if (!it.hasNext()) {
+			return;
+		}
+		Map.Entry<Bitmap, BucketKey> oldest = it.next();
+		it.remove();
+		Bitmap bitmap = oldest.getKey();
+		buckets.get(oldest.getValue()).remove(bitmap);
+		poolSize -= getSize(bitmap);
+	}
+
+	private int getSize(Bitmap bitmap) {
+		return bitmap.getRowBytes() * bitmap.getHeight();
+	}
+
+	/** Display count of bitmap */
+	private static final class ReferenceCount {
+		int count;
+		/** Whether bitmap was offered to pool while it was displayed */
+		boolean offered;
+	}
+
+	/** Key of bitmap group: width, height and config */
+	private static final class BucketKey {
+		private final int width;
+		private final int height;
+		private final Config config;
+
+		BucketKey(int width, int height, Config config) {
+			this.width = width;
+			this.height = height;
+			this.config = config;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof BucketKey)) return false;
+			BucketKey key = (BucketKey) o;
+			return width == key.width && height == key.height && config == key.config;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = width;
+			result = 31 * result + height;
+			result = 31 * result + (config == null ? 0 : config.hashCode());
+			return result;
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package com.nostra13.universalimageloader.cache.memory;
+
+/**
+ * Interface for memory cache which considers cost of value loading: values which are expensive to load again are kept
+ * longer.
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ */
+public interface CostAwareMemoryCache<K, V> extends MemoryCacheAware<K, V> {
+
+	/**
+	 * Puts value into cache by key
+	 * 
+	 * @param cost
+	 *            Cost of value loading (time of downloading and decoding in milliseconds for bitmaps). Must be
+	 *            positive.
+	 * @return <b>true</b> - if value was put into cache successfully, <b>false</b> - if value was <b>not</b> put into
+	 *         cache
+	 */
+	boolean put(K key, V value, int cost);
+}
@@ -0,0 +1,14 @@
+package com.nostra13.universalimageloader.cache.memory;
+
+/**
+ * Listener of value removal from {@linkplain LimitedMemoryCacheAware limited memory cache}. Value is passed to listener
+ * only after it was removed from cache completely (it won't be returned by cache anymore).
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @see LimitedMemoryCacheAware#setEvictionListener(EvictionListener)
+ */
+public interface EvictionListener<V> {
+
+	/** Is called when value is evicted from cache (because of cache size limit) or removed from cache by key */
+	void onEvicted(V value);
+}
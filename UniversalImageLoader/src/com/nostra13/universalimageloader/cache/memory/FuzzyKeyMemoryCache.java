@@ -3,41 +3,64 @@ package com.nostra13.universalimageloader.cache.memory;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Decorator for {@link MemoryCacheAware}. Provides special feature for cache: some different keys are considered as
- * equals (using {@link Comparator comparator}). And when you try to put some value into cache by key so entries with
- * "equals" keys will be removed from cache before.
+ * equals (using {@link KeyGrouper key grouper}). And when you try to put some value into cache by key so entries with
+ * "equals" keys will be removed from cache before.<br />
+ * Actual key of each group is kept in hash index which is updated on every put and remove, so "equal" key is found by
+ * one lookup. Keys evicted by decorated cache itself are removed from index gradually: a couple of least recently
+ * indexed keys are checked on every put.<br />
+ * Cost of value is passed to decorated cache if it's {@link CostAwareMemoryCache}.
  * 
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  */
-public class FuzzyKeyMemoryCache<K, V> implements MemoryCacheAware<K, V> {
+public class FuzzyKeyMemoryCache<K, V> implements CostAwareMemoryCache<K, V> {
+
+	/** Count of indexed keys which are checked for presence in decorated cache on every put */
+	private static final int INDEX_CHECKS_PER_PUT = 2;
 
 	private MemoryCacheAware<K, V> cache;
-	private Comparator<K> keyComparator;
+	private final Comparator<K> keyComparator;
+	private final KeyGrouper<K> keyGrouper;
+	/** Actual key for each group of "equal" keys (in access order). Is guarded by {@link #cache} lock. */
+	private final Map<Object, K> keyIndex = new LinkedHashMap<Object, K>(16, 0.75f, true);
+
+	public FuzzyKeyMemoryCache(MemoryCacheAware<K, V> cache, KeyGrouper<K> keyGrouper) {
+		this.cache = cache;
+		this.keyComparator = null;
+		this.keyGrouper = keyGrouper;
+	}
 
+	/**
+	 * @deprecated Use {@link #FuzzyKeyMemoryCache(MemoryCacheAware, KeyGrouper)} instead. Comparator can't be used for
+	 *             indexing of keys, so all cache keys are iterated on every put.
+	 */
+	@Deprecated
 	public FuzzyKeyMemoryCache(MemoryCacheAware<K, V> cache, Comparator<K> keyComparator) {
 		this.cache = cache;
 		this.keyComparator = keyComparator;
+		this.keyGrouper = null;
 	}
 
 	@Override
 	public boolean put(K key, V value) {
-		// Search equal key and remove this entry
-		K keyToRemove = null;
-		synchronized (cache) {
-			for (Iterator<K> it = cache.keys().iterator(); it.hasNext();) {
-				K cacheKey = it.next();
-				if (keyComparator.compare(key, cacheKey) == 0) {
-					keyToRemove = cacheKey;
-				}
-			}
-			cache.remove(keyToRemove);
-		}
-
+		removeEqualKey(key);
 		return cache.put(key, value);
 	}
 
+	@Override
+	public boolean put(K key, V value, int cost) {
+		removeEqualKey(key);
+		if (cache instanceof CostAwareMemoryCache) {
+			return ((CostAwareMemoryCache<K, V>) cache).put(key, value, cost);
+		} else {
+			return cache.put(key, value);
+		}
+	}
+
 	@Override
 	public V get(K key) {
 		return cache.get(key);
@@ -45,11 +68,23 @@ public class FuzzyKeyMemoryCache<K, V> implements MemoryCacheAware<K, V> {
 
 	@Override
 	public void remove(K key) {
+		if (keyGrouper != null) {
+			Object group = keyGrouper.getGroup(key);
+			synchronized (cache) {
+				K indexedKey = keyIndex.get(group);
+				if (indexedKey != null && indexedKey.equals(key)) {
+					keyIndex.remove(group);
+				}
+			}
+		}
 		cache.remove(key);
 	}
 
 	@Override
 	public void clear() {
+		synchronized (cache) {
+			keyIndex.clear();
+		}
 		cache.clear();
 	}
 
@@ -57,4 +92,54 @@ public class FuzzyKeyMemoryCache<K, V> implements MemoryCacheAware<K, V> {
 	public Collection<K> keys() {
 		return cache.keys();
 	}
+
+	/** Finds "equal" key and removes its entry */
+	private void removeEqualKey(K key) {
+		if (keyGrouper == null) {
+			removeEqualKeyByComparator(key);
+			return;
+		}
+
+		Object group = keyGrouper.getGroup(key);
+		synchronized (cache) {
+			removeEvictedKeysFromIndex();
+			K keyToRemove = keyIndex.put(group, key);
+			if (keyToRemove != null && !keyToRemove.equals(key)) {
+				cache.remove(keyToRemove);
+			}
+		}
+	}
+
+	/**
+	 * Checks least recently indexed keys: keys evicted by decorated cache are removed from index, present keys are
+	 * moved to the end of index. Must be called under {@link #cache} lock.
+	 */
+	private void removeEvictedKeysFromIndex() {
+		Collection<K> cacheKeys = cache.keys();
+		for (int i = 0; i < INDEX_CHECKS_PER_PUT && !keyIndex.isEmpty(); i++) {
+			Iterator<Map.Entry<Object, K>> it = keyIndex.entrySet().iterator();
+			Map.Entry<Object, K> eldest = it.next();
+			if (cacheKeys.contains(eldest.getValue())) {
+				keyIndex.get(eldest.getKey()); // Access moves key to the end of index
+			} else {
+				it.remove();
+			}
+		}
+	}
+
+	private void removeEqualKeyByComparator(K key) {
+		// Search equal key and remove this entry
+		K keyToRemove = null;
+		synchronized (cache) {
+			for (Iterator<K> it = cache.keys().iterator(); it.hasNext();) {
+				K cacheKey = it.next();
+				if (keyComparator.compare(key, cacheKey) == 0) {
+					keyToRemove = cacheKey;
+				}
+			}
+			if (keyToRemove != null) {
+				cache.remove(keyToRemove);
+			}
+		}
+	}
 }
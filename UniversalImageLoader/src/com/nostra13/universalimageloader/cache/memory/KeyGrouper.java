@@ -0,0 +1,14 @@
+package com.nostra13.universalimageloader.cache.memory;
+
+/**
+ * Defines groups of memory cache keys which are considered as equal by {@link FuzzyKeyMemoryCache}. Groups are compared
+ * by {@link Object#equals(Object) equals()} and {@link Object#hashCode() hashCode()}.
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @see FuzzyKeyMemoryCache#FuzzyKeyMemoryCache(MemoryCacheAware, KeyGrouper)
+ */
+public interface KeyGrouper<K> {
+
+	/** Returns group of key. Keys with equal groups are considered as equal. */
+	Object getGroup(K key);
+}
@@ -1,28 +1,33 @@
 package com.nostra13.universalimageloader.cache.memory;
 
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Limited cache. Provides object storing. Size of all stored bitmaps will not to exceed size limit (
- * {@link #getSizeLimit()}).
+ * {@link #getSizeLimit()}).<br />
+ * If {@linkplain #setEvictionListener(EvictionListener) eviction listener} is set then evicted objects are removed from
+ * cache completely and are passed to the listener.<br />
+ * Subclasses define eviction order by {@link #removeNext()}; their structures are guarded by cache instance lock
+ * (methods of this class which change cache are synchronized).
  * 
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see BaseMemoryCache
  */
-public abstract class LimitedMemoryCache<K, V> extends BaseMemoryCache<K, V> {
+public abstract class LimitedMemoryCache<K, V> extends BaseMemoryCache<K, V> implements LimitedMemoryCacheAware<K, V> {
 
 	private final int sizeLimit;
 
 	private int cacheSize = 0;
 
 	/**
-	 * Contains strong references to stored objects. Each next object is added last. If hard cache size will exceed
-	 * limit then first object is deleted (but it continue exist at {@link #softMap} and can be collected by GC at any
-	 * time)
+	 * Contains strong references to stored objects (and their keys). If hard cache size will exceed limit then object
+	 * defined by {@link #removeNext()} is deleted (but it continue exist at {@link #softMap} and can be collected by GC
+	 * at any time)
 	 */
-	private final List<V> hardCache = Collections.synchronizedList(new LinkedList<V>());
+	private final Map<V, K> hardCache = new HashMap<V, K>();
+
+	private volatile EvictionListener<V> evictionListener;
 
 	/**
 	 * @param sizeLimit
@@ -33,20 +38,16 @@ public abstract class LimitedMemoryCache<K, V> extends BaseMemoryCache<K, V> {
 	}
 
 	@Override
-	public boolean put(K key, V value) {
+	public synchronized boolean put(K key, V value) {
 		boolean putSuccessfully = false;
 		// Try to add value to hard cache
 		int valueSize = getSize(value);
 		int sizeLimit = getSizeLimit();
 		if (valueSize < sizeLimit) {
-			while (cacheSize + valueSize > sizeLimit) {
-				V removedValue = removeNext();
-				if (hardCache.remove(removedValue)) {
-					cacheSize -= getSize(removedValue);
-				}
+			trimToSize(sizeLimit - valueSize);
+			if (hardCache.put(value, key) == null) {
+				cacheSize += valueSize;
 			}
-			hardCache.add(value);
-			cacheSize += valueSize;
 
 			putSuccessfully = true;
 		}
@@ -56,28 +57,73 @@ public abstract class LimitedMemoryCache<K, V> extends BaseMemoryCache<K, V> {
 	}
 
 	@Override
-	public void remove(K key) {
+	public synchronized void remove(K key) {
 		V value = super.get(key);
-		if (value != null) {
-			if (hardCache.remove(value)) {
-				cacheSize -= getSize(value);
-			}
+		boolean removedFromHardCache = false;
+		if (value != null && hardCache.containsKey(value)) {
+			hardCache.remove(value);
+			cacheSize -= getSize(value);
+			removedFromHardCache = true;
 		}
 		super.remove(key);
+		if (removedFromHardCache && evictionListener != null) {
+			evictionListener.onEvicted(value);
+		}
 	}
 
 	@Override
-	public void clear() {
+	public synchronized void clear() {
 		hardCache.clear();
 		cacheSize = 0;
 		super.clear();
 	}
 
+	/**
+	 * Evicts objects from hard cache (in order defined by {@link #removeNext()}) until size of all stored objects
+	 * doesn't exceed passed size
+	 */
+	@Override
+	public synchronized void trimToSize(int maxSize) {
+		while (cacheSize > maxSize && !hardCache.isEmpty()) {
+			V removedValue = removeNext();
+			if (removedValue == null) break; // Eviction order doesn't know any object
+			if (hardCache.containsKey(removedValue)) {
+				K removedKey = hardCache.remove(removedValue);
+				cacheSize -= getSize(removedValue);
+				if (evictionListener != null) {
+					if (super.get(removedKey) == removedValue) { // Key can refer to newer value
+						super.remove(removedKey);
+					}
+					evictionListener.onEvicted(removedValue);
+				}
+			}
+		}
+	}
+
+	/** Returns size of all objects stored in hard cache */
+	@Override
+	public synchronized int getCacheSize() {
+		return cacheSize;
+	}
+
+	/**
+	 * Sets listener of object eviction. Evicted objects are removed from cache completely (they aren't kept by weak
+	 * references) so listener can reuse them safely.
+	 */
+	@Override
+	public void setEvictionListener(EvictionListener<V> evictionListener) {
+		this.evictionListener = evictionListener;
+	}
+
 	protected int getSizeLimit() {
 		return sizeLimit;
 	}
 
 	protected abstract int getSize(V value);
 
+	/**
+	 * Returns next object for eviction and forgets it. Is called under cache instance lock. Should return <b>null</b>
+	 * if there are no objects.
+	 */
 	protected abstract V removeNext();
 }
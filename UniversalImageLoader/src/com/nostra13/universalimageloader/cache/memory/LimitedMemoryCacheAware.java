@@ -0,0 +1,23 @@
+package com.nostra13.universalimageloader.cache.memory;
+
+/**
+ * Interface for memory cache which limits total size of stored values. Size of cache is known to ImageLoader, so
+ * decoding can free cache for new bitmaps and evicted bitmaps can be reused.
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @see LimitedMemoryCache
+ */
+public interface LimitedMemoryCacheAware<K, V> extends MemoryCacheAware<K, V> {
+
+	/** Evicts values from cache until total size of stored values doesn't exceed passed size */
+	void trimToSize(int maxSize);
+
+	/** Returns total size of stored values */
+	int getCacheSize();
+
+	/**
+	 * Sets listener of value eviction. Evicted values are removed from cache completely so listener can reuse them
+	 * safely.
+	 */
+	void setEvictionListener(EvictionListener<V> evictionListener);
+}
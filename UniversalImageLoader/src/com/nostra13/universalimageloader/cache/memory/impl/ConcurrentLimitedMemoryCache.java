@@ -0,0 +1,246 @@
+package com.nostra13.universalimageloader.cache.memory.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.nostra13.universalimageloader.cache.memory.EvictionListener;
+import com.nostra13.universalimageloader.cache.memory.LimitedMemoryCacheAware;
+
+import android.graphics.Bitmap;
+
+/**
+ * Limited {@link Bitmap bitmap} cache for concurrent access. Size of all stored bitmaps will not to exceed size limit.
+ * When cache reaches limit size then bitmap which wasn't used recently is deleted from cache (CLOCK algorithm, an
+ * approximation of LRU).<br />
+ * Reading of cache doesn't take any locks: entries are stored in {@link ConcurrentHashMap} and reading only marks
+ * entry as used. Entries are distributed among segments by key hash; each segment has its own lock and eviction
+ * queue, so puts and evictions in different segments don't block each other. Total cache size is counted atomically.<br />
+ * <b>NOTE:</b> Cache keeps only strong references. Unlike {@link UsingFreqLimitedMemoryCache} it doesn't keep weak
+ * references to deleted bitmaps, so deleted bitmap can't be got from cache even if it's still in memory.
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ */
+public class ConcurrentLimitedMemoryCache implements LimitedMemoryCacheAware<String, Bitmap> {
+
+	/** Count of segments. Must be power of 2. */
+	private static final int SEGMENT_COUNT = 8;
+
+	private final int sizeLimit;
+	private final AtomicLong cacheSize = new AtomicLong();
+
+	private final ConcurrentHashMap<String, CacheEntry> entries = new ConcurrentHashMap<String, CacheEntry>();
+	private final Segment[] segments;
+	/** Defines segment for next eviction, so segments are evicted in turn */
+	private final AtomicInteger evictionCursor = new AtomicInteger();
+
+	private volatile EvictionListener<Bitmap> evictionListener;
+
+	/**
+	 * @param sizeLimit
+	 *            Maximum size for cache (in bytes)
+	 */
+	public ConcurrentLimitedMemoryCache(int sizeLimit) {
+		this.sizeLimit = sizeLimit;
+		segments = new Segment[SEGMENT_COUNT];
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			segments[i] = new Segment();
+		}
+	}
+
+	@Override
+	public boolean put(String key, Bitmap value) {
+		int valueSize = getSize(value);
+		if (valueSize >= sizeLimit) {
+			remove(key); // Previous value of key is out-of-date anyway
+			return false;
+		}
+
+		CacheEntry entry = new CacheEntry(key, value, valueSize);
+		CacheEntry replacedEntry;
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			replacedEntry = entries.put(key, entry);
+			if (replacedEntry != null) {
+				segment.unlink(replacedEntry);
+			}
+			segment.append(entry);
+		}
+		cacheSize.addAndGet(valueSize);
+		if (replacedEntry != null) {
+			onRemoved(replacedEntry, replacedEntry.value != value);
+		}
+
+		trimToSize(sizeLimit);
+		return true;
+	}
+
+	@Override
+	public Bitmap get(String key) {
+		CacheEntry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		entry.used = true;
+		return entry.value;
+	}
+
+	@Override
+	public void remove(String key) {
+		CacheEntry removedEntry;
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			removedEntry = entries.remove(key);
+			if (removedEntry != null) {
+				segment.unlink(removedEntry);
+			}
+		}
+		if (removedEntry != null) {
+			onRemoved(removedEntry, true);
+		}
+	}
+
+	@Override
+	public Collection<String> keys() {
+		return Collections.unmodifiableSet(entries.keySet());
+	}
+
+	@Override
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				for (CacheEntry entry = segment.head; entry != null; entry = entry.next) {
+					entries.remove(entry.key, entry);
+					cacheSize.addAndGet(-entry.size);
+				}
+				segment.head = null;
+				segment.tail = null;
+			}
+		}
+	}
+
+	@Override
+	public void trimToSize(int maxSize) {
+		while (cacheSize.get() > maxSize) {
+			if (!evictNext()) break;
+		}
+	}
+
+	@Override
+	public int getCacheSize() {
+		return (int) cacheSize.get();
+	}
+
+	@Override
+	public void setEvictionListener(EvictionListener<Bitmap> evictionListener) {
+		this.evictionListener = evictionListener;
+	}
+
+	protected int getSize(Bitmap value) {
+		return value.getRowBytes() * value.getHeight();
+	}
+
+	/** Evicts entry from next non-empty segment. Returns <b>false</b> if all segments are empty. */
+	private boolean evictNext() {
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			Segment segment = segments[evictionCursor.getAndIncrement() & (SEGMENT_COUNT - 1)];
+			CacheEntry evictedEntry;
+			synchronized (segment) {
+				evictedEntry = segment.evict();
+				if (evictedEntry != null) {
+					entries.remove(evictedEntry.key, evictedEntry);
+				}
+			}
+			if (evictedEntry != null) {
+				onRemoved(evictedEntry, true);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Accounts removed entry and passes its value to eviction listener (if it's needed) */
+	private void onRemoved(CacheEntry entry, boolean notifyListener) {
+		cacheSize.addAndGet(-entry.size);
+		EvictionListener<Bitmap> listener = evictionListener;
+		if (notifyListener && listener != null) {
+			listener.onEvicted(entry.value);
+		}
+	}
+
+	private Segment segmentFor(String key) {
+		int h = key.hashCode();
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return segments[h & (SEGMENT_COUNT - 1)];
+	}
+
+	private static final class CacheEntry {
+		final String key;
+		final Bitmap value;
+		final int size;
+		/** Whether entry was read after it was passed by eviction "clock hand" last time */
+		volatile boolean used;
+		/** Neighbours in eviction queue of segment. Guarded by segment lock. */
+		CacheEntry previous;
+		CacheEntry next;
+
+		CacheEntry(String key, Bitmap value, int size) {
+			this.key = key;
+			this.value = value;
+			this.size = size;
+		}
+	}
+
+	/** Eviction queue of entries. Must be used under segment lock. */
+	private static final class Segment {
+		CacheEntry head;
+		CacheEntry tail;
+
+		void append(CacheEntry entry) {
+			entry.previous = tail;
+			entry.next = null;
+			if (tail != null) {
+				tail.next = entry;
+			} else {
+				head = entry;
+			}
+			tail = entry;
+		}
+
+		void unlink(CacheEntry entry) {
+			if (entry.previous != null) {
+				entry.previous.next = entry.next;
+			} else {
+				head = entry.next;
+			}
+			if (entry.next != null) {
+				entry.next.previous = entry.previous;
+			} else {
+				tail = entry.previous;
+			}
+			entry.previous = null;
+			entry.next = null;
+		}
+
+		/**
+		 * Removes entry which wasn't used since previous pass of "clock hand" from queue. Used entries get second
+		 * chance: they are marked as unused and moved to the end of queue.
+		 */
+		CacheEntry evict() {
+			while (head != null) {
+				CacheEntry entry = head;
+				unlink(entry);
+				if (entry.used) {
+					entry.used = false;
+					append(entry);
+				} else {
+					return entry;
+				}
+			}
+			return null;
+		}
+	}
+}
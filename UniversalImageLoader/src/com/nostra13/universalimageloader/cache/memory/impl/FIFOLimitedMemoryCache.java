@@ -1,10 +1,11 @@
 package com.nostra13.universalimageloader.cache.memory.impl;
 
 import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 import com.nostra13.universalimageloader.cache.memory.LimitedMemoryCache;
 
@@ -18,14 +19,15 @@ import android.graphics.Bitmap;
  */
 public class FIFOLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap> {
 
-	private final List<Bitmap> queue = Collections.synchronizedList(new LinkedList<Bitmap>());
+	/** Stored bitmaps in order of addition */
+	private final Set<Bitmap> queue = new LinkedHashSet<Bitmap>();
 
 	public FIFOLimitedMemoryCache(int sizeLimit) {
 		super(sizeLimit);
 	}
 
 	@Override
-	public boolean put(String key, Bitmap value) {
+	public synchronized boolean put(String key, Bitmap value) {
 		if (super.put(key, value)) {
 			queue.add(value);
 			return true;
@@ -35,7 +37,7 @@ public class FIFOLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap> {
 	}
 
 	@Override
-	public void remove(String key) {
+	public synchronized void remove(String key) {
 		Bitmap value = super.get(key);
 		if (value != null) {
 			queue.remove(value);
@@ -44,7 +46,7 @@ public class FIFOLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap> {
 	}
 
 	@Override
-	public void clear() {
+	public synchronized void clear() {
 		queue.clear();
 		super.clear();
 	}
@@ -56,11 +58,20 @@ public class FIFOLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap> {
 
 	@Override
 	protected Bitmap removeNext() {
-		return queue.remove(0);
+		Iterator<Bitmap> it = queue.iterator();
+		if (!it.hasNext()) return null;
+		Bitmap firstValue = it.next();
+		it.remove();
+		return firstValue;
 	}
 
 	@Override
 	protected Reference<Bitmap> createReference(Bitmap value) {
 		return new WeakReference<Bitmap>(value);
 	}
+
+	@Override
+	protected Reference<Bitmap> createReference(Bitmap value, ReferenceQueue<Bitmap> queue) {
+		return new WeakReference<Bitmap>(value, queue);
+	}
 }
@@ -0,0 +1,102 @@
+package com.nostra13.universalimageloader.cache.memory.impl;
+
+/**
+ * Compact probabilistic counter of key usage frequency (count-min sketch). Every key is counted by 4 counters of
+ * 4 bits; frequency of key is the minimum of its counters, so it can be overestimated because of hash collisions but
+ * never underestimated. Counters are halved periodically (after {@linkplain #sampleSize some count} of increments),
+ * so frequency of keys which were popular long ago decreases with time.<br />
+ * Isn't thread-safe.
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ */
+final class FrequencySketch {
+
+	private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final int MAX_COUNTER = 15;
+	private static final int MIN_TABLE_SIZE = 16;
+
+	/** Each element contains 16 counters */
+	private long[] table;
+	private int tableMask;
+	/** Count of increments after which counters are halved */
+	private int sampleSize;
+	private int incrementCount;
+
+	FrequencySketch() {
+		setTableSize(MIN_TABLE_SIZE);
+	}
+
+	/**
+	 * Enlarges sketch so it counts passed count of keys with low error. Collected frequencies are kept: every element
+	 * of enlarged table is copied from element of old table which contains counters of the same keys.
+	 */
+	void ensureCapacity(int keyCount) {
+		if (keyCount > table.length) {
+			long[] oldTable = table;
+			int oldTableMask = tableMask;
+			int tableSize = Integer.highestOneBit(keyCount - 1) << 1;
+			setTableSize(tableSize);
+			for (int i = 0; i < tableSize; i++) {
+				table[i] = oldTable[i & oldTableMask];
+			}
+		}
+	}
+
+	/** Returns estimated usage frequency of key (0..15) */
+	int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int start = (hash & 3) << 2;
+		int frequency = MAX_COUNTER;
+		for (int i = 0; i < 4; i++) {
+			int index = indexOf(hash, i);
+			int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/** Counts usage of key */
+	void increment(Object key) {
+		int hash = spread(key.hashCode());
+		int start = (hash & 3) << 2;
+		boolean incremented = false;
+		for (int i = 0; i < 4; i++) {
+			int index = indexOf(hash, i);
+			int offset = (start + i) << 2;
+			if (((table[index] >>> offset) & 0xfL) != MAX_COUNTER) {
+				table[index] += 1L << offset;
+				incremented = true;
+			}
+		}
+		if (incremented && ++incrementCount >= sampleSize) {
+			reset();
+		}
+	}
+
+	/** Halves all counters */
+	private void reset() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		incrementCount /= 2;
+	}
+
+	private void setTableSize(int tableSize) {
+		table = new long[tableSize];
+		tableMask = tableSize - 1;
+		sampleSize = 10 * tableSize;
+	}
+
+	private int indexOf(int hash, int i) {
+		long h = (hash + SEEDS[i]) * SEEDS[i];
+		h += h >>> 32;
+		return (int) h & tableMask;
+	}
+
+	private static int spread(int hash) {
+		hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+		hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+		return (hash >>> 16) ^ hash;
+	}
+}
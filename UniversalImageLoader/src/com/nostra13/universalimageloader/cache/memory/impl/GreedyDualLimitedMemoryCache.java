@@ -0,0 +1,166 @@
+package com.nostra13.universalimageloader.cache.memory.impl;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import com.nostra13.universalimageloader.cache.memory.CostAwareMemoryCache;
+import com.nostra13.universalimageloader.cache.memory.LimitedMemoryCache;
+
+import android.graphics.Bitmap;
+
+/**
+ * Limited {@link Bitmap bitmap} cache. Provides {@link Bitmap bitmaps} storing. Size of all stored bitmaps will not to
+ * exceed size limit. When cache reaches limit size then bitmap with the lowest priority is deleted from cache
+ * (GreedyDual-Size-Frequency algorithm).<br />
+ * Priority of bitmap is <i>L + frequency * cost / size</i>, where <i>cost</i> is time of bitmap loading (see
+ * {@link #put(Object, Bitmap, int)}), <i>frequency</i> is usage count of bitmap and <i>L</i> is priority of the last
+ * deleted bitmap. So cheap large bitmaps are deleted first, and bitmaps which aren't used for a long time lose their
+ * advantage (priority of new bitmaps grows with <i>L</i>).
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ */
+public class GreedyDualLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap> implements CostAwareMemoryCache<String, Bitmap> {
+
+	/** Cost of bitmap which is put without cost */
+	private static final int DEFAULT_COST = 1;
+
+	/** Orders entries by priority ascending; entries of the same priority are ordered by addition */
+	private static final Comparator<PriorityEntry> PRIORITY_COMPARATOR = new Comparator<PriorityEntry>() {
+		@Override
+		public int compare(PriorityEntry entry1, PriorityEntry entry2) {
+			if (entry1.priority != entry2.priority) {
+				return entry1.priority < entry2.priority ? -1 : 1;
+			}
+			return entry1.order < entry2.order ? -1 : (entry1.order == entry2.order ? 0 : 1);
+		}
+	};
+
+	/**
+	 * Contains strong references to stored objects (keys) and their priorities. If hard cache size will exceed limit
+	 * then object with the lowest priority is deleted (but it continue exist at {@link #softMap} and can be collected by
+	 * GC at any time)
+	 */
+	private final Map<Bitmap, PriorityEntry> priorityEntries = new HashMap<Bitmap, PriorityEntry>();
+	/** Entries sorted by {@link #PRIORITY_COMPARATOR} (the lowest priority first) */
+	private final SortedSet<PriorityEntry> sortedEntries = new TreeSet<PriorityEntry>(PRIORITY_COMPARATOR);
+	/** Priority of the last deleted bitmap ("inflation" value <i>L</i>) */
+	private double inflation = 0;
+	/** Source of addition order numbers */
+	private long additionCount = 0;
+
+	public GreedyDualLimitedMemoryCache(int sizeLimit) {
+		super(sizeLimit);
+	}
+
+	@Override
+	public boolean put(String key, Bitmap value) {
+		return put(key, value, DEFAULT_COST);
+	}
+
+	@Override
+	public synchronized boolean put(String key, Bitmap value, int cost) {
+		if (super.put(key, value)) {
+			PriorityEntry entry = priorityEntries.get(value);
+			if (entry == null) {
+				entry = new PriorityEntry(value, getSize(value), cost, additionCount++);
+				priorityEntries.put(value, entry);
+			} else {
+				sortedEntries.remove(entry);
+				entry.cost = cost;
+				entry.frequency++;
+			}
+			entry.priority = computePriority(entry);
+			sortedEntries.add(entry);
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public synchronized Bitmap get(String key) {
+		Bitmap value = super.get(key);
+		if (value != null) {
+			PriorityEntry entry = priorityEntries.get(value);
+			if (entry != null) {
+				sortedEntries.remove(entry);
+				entry.frequency++;
+				entry.priority = computePriority(entry);
+				sortedEntries.add(entry);
+			}
+		}
+		return value;
+	}
+
+	@Override
+	public synchronized void remove(String key) {
+		Bitmap value = super.get(key);
+		if (value != null) {
+			PriorityEntry entry = priorityEntries.remove(value);
+			if (entry != null) {
+				sortedEntries.remove(entry);
+			}
+		}
+		super.remove(key);
+	}
+
+	@Override
+	public synchronized void clear() {
+		priorityEntries.clear();
+		sortedEntries.clear();
+		inflation = 0;
+		super.clear();
+	}
+
+	@Override
+	protected int getSize(Bitmap value) {
+		return value.getRowBytes() * value.getHeight();
+	}
+
+	@Override
+	protected Bitmap removeNext() {
+		if (sortedEntries.isEmpty()) return null;
+		PriorityEntry lowestEntry = sortedEntries.first();
+		sortedEntries.remove(lowestEntry);
+		priorityEntries.remove(lowestEntry.value);
+		inflation = lowestEntry.priority;
+		return lowestEntry.value;
+	}
+
+	@Override
+	protected Reference<Bitmap> createReference(Bitmap value) {
+		return new WeakReference<Bitmap>(value);
+	}
+
+	@Override
+	protected Reference<Bitmap> createReference(Bitmap value, ReferenceQueue<Bitmap> queue) {
+		return new WeakReference<Bitmap>(value, queue);
+	}
+
+	private double computePriority(PriorityEntry entry) {
+		return inflation + (double) entry.frequency * entry.cost / Math.max(entry.size, 1);
+	}
+
+	private static final class PriorityEntry {
+		final Bitmap value;
+		final int size;
+		final long order;
+		int cost;
+		int frequency = 1;
+		/** Must not be changed while entry is in {@link #sortedEntries} */
+		double priority;
+
+		PriorityEntry(Bitmap value, int size, int cost, long order) {
+			this.value = value;
+			this.size = size;
+			this.cost = cost;
+			this.order = order;
+		}
+	}
+}
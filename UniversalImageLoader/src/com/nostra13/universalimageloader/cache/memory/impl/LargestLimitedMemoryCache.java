@@ -1,12 +1,13 @@
 package com.nostra13.universalimageloader.cache.memory.impl;
 
 import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import com.nostra13.universalimageloader.cache.memory.LimitedMemoryCache;
 
@@ -14,28 +15,46 @@ import android.graphics.Bitmap;
 
 /**
  * Limited {@link Bitmap bitmap} cache. Provides {@link Bitmap bitmaps} storing. Size of all stored bitmaps will not to
- * exceed size limit. When cache reaches limit size then the bitmap which used the least frequently is deleted from
- * cache.
+ * exceed size limit. When cache reaches limit size then the largest bitmap is deleted from cache.<br />
+ * Bitmaps are kept sorted by size, so the largest one is found in logarithmic time.
  * 
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  */
 public class LargestLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap> {
 
+	/** Orders entries by size descending; entries of the same size are ordered by addition */
+	private static final Comparator<SizeEntry> SIZE_COMPARATOR = new Comparator<SizeEntry>() {
+		@Override
+		public int compare(SizeEntry entry1, SizeEntry entry2) {
+			if (entry1.size != entry2.size) {
+				return entry1.size > entry2.size ? -1 : 1;
+			}
+			return entry1.order < entry2.order ? -1 : (entry1.order == entry2.order ? 0 : 1);
+		}
+	};
+
 	/**
-	 * Contains strong references to stored objects (keys) and last object usage date (in milliseconds). If hard cache
-	 * size will exceed limit then object with the least frequently usage is deleted (but it continue exist at
-	 * {@link #softMap} and can be collected by GC at any time)
+	 * Contains strong references to stored objects (keys) and their sizes. If hard cache size will exceed limit then
+	 * the largest object is deleted (but it continue exist at {@link #softMap} and can be collected by GC at any time)
 	 */
-	private final Map<Bitmap, Integer> valueSizes = Collections.synchronizedMap(new HashMap<Bitmap, Integer>());
+	private final Map<Bitmap, SizeEntry> sizeEntries = new HashMap<Bitmap, SizeEntry>();
+	/** Entries sorted by {@link #SIZE_COMPARATOR} (the largest first) */
+	private final SortedSet<SizeEntry> sortedEntries = new TreeSet<SizeEntry>(SIZE_COMPARATOR);
+	/** Source of addition order numbers */
+	private long additionCount = 0;
 
 	public LargestLimitedMemoryCache(int sizeLimit) {
 		super(sizeLimit);
 	}
 
 	@Override
-	public boolean put(String key, Bitmap value) {
+	public synchronized boolean put(String key, Bitmap value) {
 		if (super.put(key, value)) {
-			valueSizes.put(value, getSize(value));
+			if (!sizeEntries.containsKey(value)) {
+				SizeEntry entry = new SizeEntry(value, getSize(value), additionCount++);
+				sizeEntries.put(value, entry);
+				sortedEntries.add(entry);
+			}
 			return true;
 		} else {
 			return false;
@@ -43,17 +62,21 @@ public class LargestLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap
 	}
 
 	@Override
-	public void remove(String key) {
+	public synchronized void remove(String key) {
 		Bitmap value = super.get(key);
 		if (value != null) {
-			valueSizes.remove(value);
+			SizeEntry entry = sizeEntries.remove(value);
+			if (entry != null) {
+				sortedEntries.remove(entry);
+			}
 		}
 		super.remove(key);
 	}
 
 	@Override
-	public void clear() {
-		valueSizes.clear();
+	public synchronized void clear() {
+		sizeEntries.clear();
+		sortedEntries.clear();
 		super.clear();
 	}
 
@@ -64,29 +87,32 @@ public class LargestLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap
 
 	@Override
 	protected Bitmap removeNext() {
-		Integer maxSize = null;
-		Bitmap largestValue = null;
-		Set<Entry<Bitmap, Integer>> entries = valueSizes.entrySet();
-		synchronized (valueSizes) {
-			for (Entry<Bitmap, Integer> entry : entries) {
-				if (largestValue == null) {
-					largestValue = entry.getKey();
-					maxSize = entry.getValue();
-				} else {
-					Integer size = entry.getValue();
-					if (size > maxSize) {
-						maxSize = size;
-						largestValue = entry.getKey();
-					}
-				}
-			}
-		}
-		valueSizes.remove(largestValue);
-		return largestValue;
+		if (sortedEntries.isEmpty()) return null;
+		SizeEntry largestEntry = sortedEntries.first();
+		sortedEntries.remove(largestEntry);
+		sizeEntries.remove(largestEntry.value);
+		return largestEntry.value;
 	}
 
 	@Override
 	protected Reference<Bitmap> createReference(Bitmap value) {
 		return new WeakReference<Bitmap>(value);
 	}
+
+	@Override
+	protected Reference<Bitmap> createReference(Bitmap value, ReferenceQueue<Bitmap> queue) {
+		return new WeakReference<Bitmap>(value, queue);
+	}
+
+	private static final class SizeEntry {
+		final Bitmap value;
+		final int size;
+		final long order;
+
+		SizeEntry(Bitmap value, int size, long order) {
+			this.value = value;
+			this.size = size;
+			this.order = order;
+		}
+	}
 }
@@ -0,0 +1,290 @@
+package com.nostra13.universalimageloader.cache.memory.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.nostra13.universalimageloader.cache.memory.EvictionListener;
+import com.nostra13.universalimageloader.cache.memory.LimitedMemoryCacheAware;
+
+import android.graphics.Bitmap;
+
+/**
+ * Limited {@link Bitmap bitmap} cache with frequency based admission (W-TinyLFU). Size of all stored bitmaps will not to
+ * exceed size limit.<br />
+ * New bitmaps come into small admission window (LRU, {@value #WINDOW_PERCENT}% of cache size but not less than
+ * {@value #MIN_WINDOW_ENTRY_COUNT} bitmaps of average size). Bitmap pushed out
+ * of window enters main region only if its key was used more frequently than key of main region's eviction victim,
+ * otherwise the bitmap is deleted. So one pass through long list of images doesn't flush popular bitmaps from cache.
+ * Main region is segmented: bitmaps used in main region are moved to protected segment ({@value #PROTECTED_PERCENT}% of
+ * main region), other bitmaps are in probation segment and are evicted first.<br />
+ * Usage frequencies of keys (including keys which aren't in cache) are estimated by compact sketch which halves them
+ * periodically, so bitmaps which were popular long ago lose their priority.
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ */
+public class TinyLfuLimitedMemoryCache implements LimitedMemoryCacheAware<String, Bitmap> {
+
+	/** Size of admission window in percent of cache size */
+	private static final int WINDOW_PERCENT = 1;
+	/**
+	 * Minimum count of average bitmaps in admission window. Otherwise window of small cache is smaller than one bitmap
+	 * and every new bitmap pushes previous one out of window at once.
+	 */
+	private static final int MIN_WINDOW_ENTRY_COUNT = 3;
+	/** Size of protected segment in percent of main region size */
+	private static final int PROTECTED_PERCENT = 80;
+
+	private final int sizeLimit;
+	private final int windowSizeLimit;
+	private final int protectedSizeLimit;
+
+	/** Modified under cache instance lock only; concurrent map is used for safe iteration of {@link #keys()} */
+	private final Map<String, Node> nodes = new ConcurrentHashMap<String, Node>();
+	private final Queue window = new Queue();
+	private final Queue probation = new Queue();
+	private final Queue protectedSegment = new Queue();
+	private final FrequencySketch sketch = new FrequencySketch();
+
+	private volatile EvictionListener<Bitmap> evictionListener;
+
+	/**
+	 * @param sizeLimit
+	 *            Maximum size for cache (in bytes)
+	 */
+	public TinyLfuLimitedMemoryCache(int sizeLimit) {
+		this.sizeLimit = sizeLimit;
+		windowSizeLimit = (int) ((long) sizeLimit * WINDOW_PERCENT / 100);
+		protectedSizeLimit = (int) ((long) (sizeLimit - windowSizeLimit) * PROTECTED_PERCENT / 100);
+	}
+
+	@Override
+	public synchronized boolean put(String key, Bitmap value) {
+		int valueSize = getSize(value);
+		if (valueSize >= sizeLimit) {
+			remove(key); // Previous value of key is out-of-date anyway
+			return false;
+		}
+
+		sketch.increment(key);
+		Node node = nodes.get(key);
+		if (node == null) {
+			node = new Node(key, value, valueSize);
+			nodes.put(key, node);
+			sketch.ensureCapacity(nodes.size());
+			window.append(node);
+		} else {
+			Bitmap replacedValue = node.value;
+			node.queue.size += valueSize - node.size;
+			node.value = value;
+			node.size = valueSize;
+			onAccess(node);
+			if (replacedValue != value) {
+				notifyEviction(replacedValue);
+			}
+		}
+
+		admitWindowOverflow();
+		trimToSize(sizeLimit);
+		return true;
+	}
+
+	@Override
+	public synchronized Bitmap get(String key) {
+		sketch.increment(key);
+		Node node = nodes.get(key);
+		if (node == null) {
+			return null;
+		}
+		onAccess(node);
+		return node.value;
+	}
+
+	@Override
+	public synchronized void remove(String key) {
+		Node node = nodes.remove(key);
+		if (node != null) {
+			node.queue.unlink(node);
+			notifyEviction(node.value);
+		}
+	}
+
+	@Override
+	public Collection<String> keys() {
+		return Collections.unmodifiableSet(nodes.keySet());
+	}
+
+	@Override
+	public synchronized void clear() {
+		nodes.clear();
+		window.clear();
+		probation.clear();
+		protectedSegment.clear();
+	}
+
+	/** Evicts bitmaps (from probation segment first) until size of all stored bitmaps doesn't exceed passed size */
+	@Override
+	public synchronized void trimToSize(int maxSize) {
+		while (getCacheSize() > maxSize) {
+			Node victim = probation.head;
+			if (victim == null) victim = protectedSegment.head;
+			if (victim == null) victim = window.head;
+			if (victim == null) break;
+			evict(victim);
+		}
+	}
+
+	@Override
+	public synchronized int getCacheSize() {
+		return window.size + probation.size + protectedSegment.size;
+	}
+
+	/**
+	 * Sets listener of bitmap eviction. Evicted bitmaps (and bitmaps which aren't admitted to cache) are removed from
+	 * cache completely so listener can reuse them safely.
+	 */
+	@Override
+	public void setEvictionListener(EvictionListener<Bitmap> evictionListener) {
+		this.evictionListener = evictionListener;
+	}
+
+	protected int getSize(Bitmap value) {
+		return value.getRowBytes() * value.getHeight();
+	}
+
+	private void onAccess(Node node) {
+		Queue queue = node.queue;
+		queue.unlink(node);
+		if (queue == probation || queue == protectedSegment) {
+			protectedSegment.append(node);
+			// Demote least recently used bitmaps of protected segment
+			while (protectedSegment.size > protectedSizeLimit && protectedSegment.head != node) {
+				Node demoted = protectedSegment.head;
+				protectedSegment.unlink(demoted);
+				probation.append(demoted);
+			}
+		} else {
+			window.append(node);
+		}
+	}
+
+	/**
+	 * Moves least recently used bitmaps out of window while window exceeds its limit (the latest bitmap stays in window
+	 * anyway, even if it's larger than window). Each candidate bitmap enters main
+	 * region if it has room, otherwise candidate competes with eviction victims of main region by usage frequency.
+	 */
+	private void admitWindowOverflow() {
+		int windowSizeLimit = getWindowSizeLimit();
+		while (window.size > windowSizeLimit && window.head != window.tail) {
+			Node candidate = window.head;
+			window.unlink(candidate);
+
+			int lackingSize = getCacheSize() + candidate.size - sizeLimit;
+			int candidateFrequency = sketch.frequency(candidate.key);
+			// Victims are taken from probation segment only: protected bitmaps were used in main region already
+			Node victim = probation.head;
+			int victimsSize = 0;
+			boolean admitted = true;
+			while (victimsSize < lackingSize) {
+				if (victim == null || sketch.frequency(victim.key) >= candidateFrequency) {
+					admitted = false;
+					break;
+				}
+				victimsSize += victim.size;
+				victim = victim.next;
+			}
+
+			if (admitted) {
+				while (getCacheSize() + candidate.size > sizeLimit && probation.head != null) {
+					evict(probation.head);
+				}
+				probation.append(candidate);
+			} else {
+				nodes.remove(candidate.key);
+				notifyEviction(candidate.value);
+			}
+		}
+	}
+
+	/** Returns window size limit considering average size of stored bitmaps (window can't exceed half of cache size) */
+	private int getWindowSizeLimit() {
+		int entryCount = nodes.size();
+		if (entryCount == 0) return windowSizeLimit;
+		long minWindowSize = (long) getCacheSize() / entryCount * MIN_WINDOW_ENTRY_COUNT;
+		return (int) Math.min(Math.max(windowSizeLimit, minWindowSize), sizeLimit / 2);
+	}
+
+	private void evict(Node node) {
+		node.queue.unlink(node);
+		nodes.remove(node.key);
+		notifyEviction(node.value);
+	}
+
+	private void notifyEviction(Bitmap value) {
+		EvictionListener<Bitmap> listener = evictionListener;
+		if (listener != null) {
+			listener.onEvicted(value);
+		}
+	}
+
+	private static final class Node {
+		final String key;
+		Bitmap value;
+		int size;
+		/** Queue which contains this node */
+		Queue queue;
+		Node previous;
+		Node next;
+
+		Node(String key, Bitmap value, int size) {
+			this.key = key;
+			this.value = value;
+			this.size = size;
+		}
+	}
+
+	/** LRU queue of nodes: least recently used node is head */
+	private static final class Queue {
+		Node head;
+		Node tail;
+		/** Total size of bitmaps in queue */
+		int size;
+
+		void append(Node node) {
+			node.queue = this;
+			node.previous = tail;
+			node.next = null;
+			if (tail != null) {
+				tail.next = node;
+			} else {
+				head = node;
+			}
+			tail = node;
+			size += node.size;
+		}
+
+		void unlink(Node node) {
+			if (node.previous != null) {
+				node.previous.next = node.next;
+			} else {
+				head = node.next;
+			}
+			if (node.next != null) {
+				node.next.previous = node.previous;
+			} else {
+				tail = node.previous;
+			}
+			node.previous = null;
+			node.next = null;
+			node.queue = null;
+			size -= node.size;
+		}
+
+		void clear() {
+			head = null;
+			tail = null;
+			size = 0;
+		}
+	}
+}
@@ -1,12 +1,11 @@
 package com.nostra13.universalimageloader.cache.memory.impl;
 
 import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
 
 import com.nostra13.universalimageloader.cache.memory.LimitedMemoryCache;
 
@@ -21,21 +20,24 @@ import android.graphics.Bitmap;
  */
 public class UsingAgeLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap> {
 
+	private static final int INITIAL_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.75f;
+
 	/**
-	 * Contains strong references to stored objects (keys) and last object usage date (in milliseconds). If hard cache
-	 * size will exceed limit then object with the oldest last usage date is deleted (but it continue exist at
-	 * {@link #softMap} and can be collected by GC at any time)
+	 * Contains strong references to stored objects in order of their usage (the most long used object is first). If
+	 * hard cache size will exceed limit then the first object is deleted (but it continue exist at {@link #softMap}
+	 * and can be collected by GC at any time)
 	 */
-	private final Map<Bitmap, Long> lastUsageDates = Collections.synchronizedMap(new HashMap<Bitmap, Long>());
+	private final Map<Bitmap, Boolean> usageOrder = new LinkedHashMap<Bitmap, Boolean>(INITIAL_CAPACITY, LOAD_FACTOR, true);
 
 	public UsingAgeLimitedMemoryCache(int sizeLimit) {
 		super(sizeLimit);
 	}
 
 	@Override
-	public boolean put(String key, Bitmap value) {
+	public synchronized boolean put(String key, Bitmap value) {
 		if (super.put(key, value)) {
-			lastUsageDates.put(value, System.currentTimeMillis());
+			usageOrder.put(value, Boolean.TRUE);
 			return true;
 		} else {
 			return false;
@@ -43,30 +45,27 @@ public class UsingAgeLimitedMemoryCache extends LimitedMemoryCache<String, Bitma
 	}
 
 	@Override
-	public Bitmap get(String key) {
+	public synchronized Bitmap get(String key) {
 		Bitmap value = super.get(key);
-		// Save current usage date for value if value is contained in hardCahe
+		// Move value to the end of usage order if value is contained in hardCahe
 		if (value != null) {
-			Long lastUsage = lastUsageDates.get(value);
-			if (lastUsage != null) {
-				lastUsageDates.put(value, System.currentTimeMillis());
-			}
+			usageOrder.get(value);
 		}
 		return value;
 	}
 
 	@Override
-	public void remove(String key) {
+	public synchronized void remove(String key) {
 		Bitmap value = super.get(key);
 		if (value != null) {
-			lastUsageDates.remove(value);
+			usageOrder.remove(value);
 		}
 		super.remove(key);
 	}
 
 	@Override
-	public void clear() {
-		lastUsageDates.clear();
+	public synchronized void clear() {
+		usageOrder.clear();
 		super.clear();
 	}
 
@@ -77,24 +76,10 @@ public class UsingAgeLimitedMemoryCache extends LimitedMemoryCache<String, Bitma
 
 	@Override
 	protected Bitmap removeNext() {
-		Long oldestUsage = null;
-		Bitmap mostLongUsedValue = null;
-		Set<Entry<Bitmap, Long>> entries = lastUsageDates.entrySet();
-		synchronized (lastUsageDates) {
-			for (Entry<Bitmap, Long> entry : entries) {
-				if (mostLongUsedValue == null) {
-					mostLongUsedValue = entry.getKey();
-					oldestUsage = entry.getValue();
-				} else {
-					Long lastValueUsage = entry.getValue();
-					if (lastValueUsage < oldestUsage) {
-						oldestUsage = lastValueUsage;
-						mostLongUsedValue = entry.getKey();
-					}
-				}
-			}
-		}
-		lastUsageDates.remove(mostLongUsedValue);
+		Iterator<Bitmap> it = usageOrder.keySet().iterator();
+		if (!it.hasNext()) return null;
+		Bitmap mostLongUsedValue = it.next();
+		it.remove();
 		return mostLongUsedValue;
 	}
 
@@ -102,4 +87,9 @@ public class UsingAgeLimitedMemoryCache extends LimitedMemoryCache<String, Bitma
 	protected Reference<Bitmap> createReference(Bitmap value) {
 		return new WeakReference<Bitmap>(value);
 	}
+
+	@Override
+	protected Reference<Bitmap> createReference(Bitmap value, ReferenceQueue<Bitmap> queue) {
+		return new WeakReference<Bitmap>(value, queue);
+	}
 }
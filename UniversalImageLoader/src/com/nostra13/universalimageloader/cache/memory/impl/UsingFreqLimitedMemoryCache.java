@@ -1,12 +1,10 @@
 package com.nostra13.universalimageloader.cache.memory.impl;
 
 import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
 
 import com.nostra13.universalimageloader.cache.memory.LimitedMemoryCache;
 
@@ -15,27 +13,38 @@ import android.graphics.Bitmap;
 /**
  * Limited {@link Bitmap bitmap} cache. Provides {@link Bitmap bitmaps} storing. Size of all stored bitmaps will not to
  * exceed size limit. When cache reaches limit size then the bitmap which used the least frequently is deleted from
- * cache.
+ * cache.<br />
+ * Bitmaps are grouped into buckets by usage count, so usage counting and eviction take constant time. Bitmaps with the
+ * same usage count are evicted in order of their last usage.
  * 
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  */
 public class UsingFreqLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap> {
 
 	/**
-	 * Contains strong references to stored objects (keys) and last object usage date (in milliseconds). If hard cache
-	 * size will exceed limit then object with the least frequently usage is deleted (but it continue exist at
-	 * {@link #softMap} and can be collected by GC at any time)
+	 * Contains strong references to stored objects (keys) and their usage entries. If hard cache size will exceed limit
+	 * then object with the least frequently usage is deleted (but it continue exist at {@link #softMap} and can be
+	 * collected by GC at any time)
 	 */
-	private final Map<Bitmap, Integer> usingCounts = Collections.synchronizedMap(new HashMap<Bitmap, Integer>());
+	private final Map<Bitmap, UsageEntry> usageEntries = new HashMap<Bitmap, UsageEntry>();
+	/** Bucket of the least used objects. Buckets are linked in order of usage count. */
+	private UsageBucket firstBucket;
 
 	public UsingFreqLimitedMemoryCache(int sizeLimit) {
 		super(sizeLimit);
 	}
 
 	@Override
-	public boolean put(String key, Bitmap value) {
+	public synchronized boolean put(String key, Bitmap value) {
 		if (super.put(key, value)) {
-			usingCounts.put(value, 0);
+			if (!usageEntries.containsKey(value)) {
+				UsageEntry entry = new UsageEntry(value);
+				usageEntries.put(value, entry);
+				if (firstBucket == null || firstBucket.usageCount != 0) {
+					firstBucket = insertBucket(0, null, firstBucket);
+				}
+				addToBucket(entry, firstBucket);
+			}
 			return true;
 		} else {
 			return false;
@@ -43,30 +52,40 @@ public class UsingFreqLimitedMemoryCache extends LimitedMemoryCache<String, Bitm
 	}
 
 	@Override
-	public Bitmap get(String key) {
+	public synchronized Bitmap get(String key) {
 		Bitmap value = super.get(key);
 		// Increment usage count for value if value is contained in hardCahe
 		if (value != null) {
-			Integer usageCount = usingCounts.get(value);
-			if (usageCount != null) {
-				usingCounts.put(value, usageCount + 1);
+			UsageEntry entry = usageEntries.get(value);
+			if (entry != null) {
+				UsageBucket bucket = entry.bucket;
+				UsageBucket nextBucket = bucket.next;
+				if (nextBucket == null || nextBucket.usageCount != bucket.usageCount + 1) {
+					nextBucket = insertBucket(bucket.usageCount + 1, bucket, nextBucket);
+				}
+				removeFromBucket(entry);
+				addToBucket(entry, nextBucket);
 			}
 		}
 		return value;
 	}
 
 	@Override
-	public void remove(String key) {
+	public synchronized void remove(String key) {
 		Bitmap value = super.get(key);
 		if (value != null) {
-			usingCounts.remove(value);
+			UsageEntry entry = usageEntries.remove(value);
+			if (entry != null) {
+				removeFromBucket(entry);
+			}
 		}
 		super.remove(key);
 	}
 
 	@Override
-	public void clear() {
-		usingCounts.clear();
+	public synchronized void clear() {
+		usageEntries.clear();
+		firstBucket = null;
 		super.clear();
 	}
 
@@ -77,29 +96,101 @@ public class UsingFreqLimitedMemoryCache extends LimitedMemoryCache<String, Bitm
 
 	@Override
 	protected Bitmap removeNext() {
-		Integer minUsageCount = null;
-		Bitmap leastUsedValue = null;
-		Set<Entry<Bitmap, Integer>> entries = usingCounts.entrySet();
-		synchronized (usingCounts) {
-			for (Entry<Bitmap, Integer> entry : entries) {
-				if (leastUsedValue == null) {
-					leastUsedValue = entry.getKey();
-					minUsageCount = entry.getValue();
-				} else {
-					Integer lastValueUsage = entry.getValue();
-					if (lastValueUsage < minUsageCount) {
-						minUsageCount = lastValueUsage;
-						leastUsedValue = entry.getKey();
-					}
-				}
-			}
-		}
-		usingCounts.remove(leastUsedValue);
-		return leastUsedValue;
+		if (firstBucket == null) return null;
+		UsageEntry leastUsedEntry = firstBucket.first;
+		removeFromBucket(leastUsedEntry);
+		usageEntries.remove(leastUsedEntry.value);
+		return leastUsedEntry.value;
 	}
 
 	@Override
 	protected Reference<Bitmap> createReference(Bitmap value) {
 		return new WeakReference<Bitmap>(value);
 	}
+
+	@Override
+	protected Reference<Bitmap> createReference(Bitmap value, ReferenceQueue<Bitmap> queue) {
+		return new WeakReference<Bitmap>(value, queue);
+	}
+
+	/** Creates empty bucket and links it between passed buckets (any of them can be null) */
+	private UsageBucket insertBucket(int usageCount, UsageBucket previous, UsageBucket next) {
+		UsageBucket bucket = new UsageBucket(usageCount);
+		bucket.previous = previous;
+		bucket.next = next;
+		if (previous != null) {
+			previous.next = bucket;
+		}
+		if (next != null) {
+			next.previous = bucket;
+		}
+		return bucket;
+	}
+
+	/** Adds entry to the end of bucket */
+	private void addToBucket(UsageEntry entry, UsageBucket bucket) {
+		entry.bucket = bucket;
+		entry.previous = bucket.last;
+		entry.next = null;
+		if (bucket.last != null) {
+			bucket.last.next = entry;
+		} else {
+			bucket.first = entry;
+		}
+		bucket.last = entry;
+	}
+
+	/** Removes entry from its bucket. Bucket is unlinked if it becomes empty. */
+	private void removeFromBucket(UsageEntry entry) {
+		UsageBucket bucket = entry.bucket;
+		if (entry.previous != null) {
+			entry.previous.next = entry.next;
+		} else {
+			bucket.first = entry.next;
+		}
+		if (entry.next != null) {
+			entry.next.previous = entry.previous;
+		} else {
+			bucket.last = entry.previous;
+		}
+		entry.previous = null;
+		entry.next = null;
+		entry.bucket = null;
+
+		if (bucket.first == null) {
+			if (bucket.previous != null) {
+				bucket.previous.next = bucket.next;
+			} else {
+				firstBucket = bucket.next;
+			}
+			if (bucket.next != null) {
+				bucket.next.previous = bucket.previous;
+			}
+		}
+	}
+
+	/** Stored object with links to neighbours in its usage bucket */
+	private static final class UsageEntry {
+		final Bitmap value;
+		UsageBucket bucket;
+		UsageEntry previous;
+		UsageEntry next;
+
+		UsageEntry(Bitmap value) {
+			this.value = value;
+		}
+	}
+
+	/** Objects with the same usage count (in order of their last usage) */
+	private static final class UsageBucket {
+		final int usageCount;
+		UsageBucket previous;
+		UsageBucket next;
+		UsageEntry first;
+		UsageEntry last;
+
+		UsageBucket(int usageCount) {
+			this.usageCount = usageCount;
+		}
+	}
 }
@@ -1,5 +1,7 @@
 package com.nostra13.universalimageloader.core;
 
+import android.graphics.Bitmap;
+
 /**
  * Contains options for image display. Defines:
  * <ul>
@@ -7,6 +9,8 @@ package com.nostra13.universalimageloader.core;
  * <li>whether stub image will be displayed in {@link android.widget.ImageView ImageView} if empty URL is passed</li>
  * <li>whether loaded image will be cached in memory</li>
  * <li>whether loaded image will be cached on disc</li>
+ * <li>{@linkplain Bitmap.Config config} and quality options for image decoding</li>
+ * <li>whether image preview will be displayed before full image</li>
  * </ul>
  * 
  * You can create instance:
@@ -26,6 +30,12 @@ public final class DisplayImageOptions {
 	private final boolean cacheInMemory;
 	private final boolean cacheOnDisc;
 	private final DecodingType decodingType;
+	private final int priority;
+	private final Bitmap.Config bitmapConfig;
+	private final boolean purgeable;
+	private final boolean inputShareable;
+	private final boolean dither;
+	private final boolean displayPreviewFirst;
 
 	private DisplayImageOptions(Builder builder) {
 		stubImage = builder.stubImage;
@@ -33,6 +43,12 @@ public final class DisplayImageOptions {
 		cacheInMemory = builder.cacheInMemory;
 		cacheOnDisc = builder.cacheOnDisc;
 		decodingType = builder.decodingType;
+		priority = builder.priority;
+		bitmapConfig = builder.bitmapConfig;
+		purgeable = builder.purgeable;
+		inputShareable = builder.inputShareable;
+		dither = builder.dither;
+		displayPreviewFirst = builder.displayPreviewFirst;
 	}
 
 	boolean isShowStubImage() {
@@ -63,17 +79,52 @@ public final class DisplayImageOptions {
 		return decodingType;
 	}
 
+	int getPriority() {
+		return priority;
+	}
+
+	Bitmap.Config getBitmapConfig() {
+		return bitmapConfig;
+	}
+
+	boolean isPurgeable() {
+		return purgeable;
+	}
+
+	boolean isInputShareable() {
+		return inputShareable;
+	}
+
+	boolean isDither() {
+		return dither;
+	}
+
+	boolean isDisplayPreviewFirst() {
+		return displayPreviewFirst;
+	}
+
 	/**
 	 * Builder for {@link DisplayImageOptions}
 	 * 
 	 * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
 	 */
 	public static class Builder {
+		/** {@value} */
+		public static final int DEFAULT_PRIORITY = 0;
+		/** {@link Bitmap.Config#ARGB_8888 ARGB_8888} */
+		public static final Bitmap.Config DEFAULT_BITMAP_CONFIG = Bitmap.Config.ARGB_8888;
+
 		private Integer stubImage = null;
 		private Integer imageForEmptyUrl = null;
 		private boolean cacheInMemory = false;
 		private boolean cacheOnDisc = false;
 		private DecodingType decodingType = DecodingType.FAST;
+		private int priority = DEFAULT_PRIORITY;
+		private Bitmap.Config bitmapConfig = DEFAULT_BITMAP_CONFIG;
+		private boolean purgeable = false;
+		private boolean inputShareable = false;
+		private boolean dither = true;
+		private boolean displayPreviewFirst = false;
 
 		/**
 		 * Stub image will be displayed in {@link android.widget.ImageView ImageView} during image loading
@@ -116,6 +167,66 @@ public final class DisplayImageOptions {
 			return this;
 		}
 
+		/**
+		 * Sets priority of display image task. Tasks with greater priority are executed earlier than other queued
+		 * tasks. Tasks with equal priority are executed in {@linkplain QueueProcessingType order} defined by
+		 * {@linkplain ImageLoaderConfiguration.Builder#tasksProcessingOrder(QueueProcessingType) configuration}.<br />
+		 * Default value - {@link #DEFAULT_PRIORITY this}
+		 */
+		public Builder priority(int priority) {
+			this.priority = priority;
+			return this;
+		}
+
+		/**
+		 * Sets {@link Bitmap.Config bitmap config} for image decoding. {@link Bitmap.Config#RGB_565 RGB_565} takes
+		 * half as much memory as {@link Bitmap.Config#ARGB_8888 ARGB_8888} and is appropriate for opaque images
+		 * (i.e. photos).<br />
+		 * Default value - {@link #DEFAULT_BITMAP_CONFIG this}
+		 */
+		public Builder bitmapConfig(Bitmap.Config bitmapConfig) {
+			this.bitmapConfig = bitmapConfig;
+			return this;
+		}
+
+		/**
+		 * Decoded bitmap will be purgeable: system can free its pixels under memory pressure and decode them again on
+		 * demand. Is supported on Android 1.6+.
+		 */
+		public Builder purgeable() {
+			purgeable = true;
+			return this;
+		}
+
+		/**
+		 * Purgeable bitmap will keep reference to encoded image data instead of its copy. Has effect only with
+		 * {@link #purgeable()}. Is supported on Android 1.6+.
+		 */
+		public Builder inputShareable() {
+			inputShareable = true;
+			return this;
+		}
+
+		/**
+		 * Sets whether decoder will dither decoded image (if bitmap config has less colors than image).<br />
+		 * Default value - <b>true</b>
+		 */
+		public Builder dither(boolean dither) {
+			this.dither = dither;
+			return this;
+		}
+
+		/**
+		 * Preview of image will be displayed in {@link android.widget.ImageView ImageView} before full image: another
+		 * size of the image cached in memory or (if there is no such) heavily downsampled image which is decoded
+		 * quickly. Full image is decoded with lower priority and replaces the preview. It's appropriate for large images
+		 * (i.e. for full-screen galleries).
+		 */
+		public Builder displayPreviewFirst() {
+			displayPreviewFirst = true;
+			return this;
+		}
+
 		/** Builds configured {@link DisplayImageOptions} object */
 		public DisplayImageOptions build() {
 			return new DisplayImageOptions(this);
@@ -1,50 +1,172 @@
 package com.nostra13.universalimageloader.core;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.lang.reflect.Field;
 import java.net.URL;
 
 import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
 import android.graphics.BitmapFactory;
 import android.graphics.BitmapFactory.Options;
+import android.os.Build;
+
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
 
 /**
- * Decodes images to {@link Bitmap}
- * 
+ * Decodes images to {@link Bitmap}. Image stream is opened once for reading of image bounds and for decoding: image
+ * header is read into buffer for bounds decoding and then the buffer and the rest of stream are decoded.<br />
+ * If {@linkplain #setBitmapPool(BitmapPool) bitmap pool} is set then image is decoded into pooled bitmap of appropriate
+ * size (if there is one). Decoding into existing bitmap is supported since Android 3.0 so it's done through reflection.
+ *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  */
 final class ImageDecoder {
 
+	/** Size of buffer for image header which is read for decoding of image bounds */
+	private static final int HEADER_BUFFER_SIZE = 16 * 1024;
+
+	/** Since this version bitmap can be reused for decoding of image with any sample size */
+	private static final int SDK_VERSION_KITKAT = 19;
+
+	/** <b>BitmapFactory.Options.inBitmap</b> field or <b>null</b> if bitmap reuse isn't supported */
+	private static final Field IN_BITMAP_FIELD;
+	/** <b>BitmapFactory.Options.inMutable</b> field or <b>null</b> if bitmap reuse isn't supported */
+	private static final Field IN_MUTABLE_FIELD;
+	/** <b>BitmapFactory.Options.inPurgeable</b> field or <b>null</b> if it isn't supported (Android 1.6+) */
+	private static final Field IN_PURGEABLE_FIELD = getOptionsField("inPurgeable");
+	/** <b>BitmapFactory.Options.inInputShareable</b> field or <b>null</b> if it isn't supported (Android 1.6+) */
+	private static final Field IN_INPUT_SHAREABLE_FIELD = getOptionsField("inInputShareable");
+	private static final boolean SCALED_BITMAP_REUSE_SUPPORTED;
+
+	static {
+		Field inBitmapField = getOptionsField("inBitmap");
+		Field inMutableField = getOptionsField("inMutable");
+		boolean reuseSupported = inBitmapField != null && inMutableField != null;
+		IN_BITMAP_FIELD = reuseSupported ? inBitmapField : null;
+		IN_MUTABLE_FIELD = reuseSupported ? inMutableField : null;
+
+		int sdkVersion;
+		try {
+			sdkVersion = Integer.parseInt(Build.VERSION.SDK);
+		} catch (NumberFormatException e) {
+			sdkVersion = 0;
+		}
+		SCALED_BITMAP_REUSE_SUPPORTED = sdkVersion >= SDK_VERSION_KITKAT;
+	}
+
 	private URL imageUrl;
+	private byte[] imageData;
+	private int imageDataLength;
 	private ImageSize targetSize;
-	private DecodingType decodingType;
+	private ViewScaleType scaleType;
+	private DisplayImageOptions displayOptions;
+
+	/** Opened image stream. Its header is read into {@link #header} already. */
+	private InputStream imageStream;
+	private byte[] header;
+	private int headerLength;
+
+	/** Image bounds read by {@link #prepareDecodingOptions()} */
+	private int imageWidth;
+	private int imageHeight;
+
+	private BitmapPool bitmapPool;
 
 	/**
 	 * @param imageUrl
 	 *            Image URL (<b>i.e.:</b> "http://site.com/image.png", "file:///mnt/sdcard/image.png")
 	 * @param targetImageSize
 	 *            Image size to scale to during decoding
-	 * @param decodingType
-	 *            {@link DecodingType Decoding type}
+	 * @param scaleType
+	 *            Type of image scaling into view. Defines which image size is sufficient for the view.
+	 * @param displayOptions
+	 *            {@linkplain DisplayImageOptions Display options} (decoding type, bitmap config and quality options)
 	 */
-	ImageDecoder(URL imageUrl, ImageSize targetImageSize, DecodingType decodingType) {
+	ImageDecoder(URL imageUrl, ImageSize targetImageSize, ViewScaleType scaleType, DisplayImageOptions displayOptions) {
 		this.imageUrl = imageUrl;
 		this.targetSize = targetImageSize;
-		this.decodingType = decodingType;
+		this.scaleType = scaleType;
+		this.displayOptions = displayOptions;
+	}
+
+	/**
+	 * @param imageData
+	 *            Encoded image data (i.e. downloaded image file)
+	 * @param targetImageSize
+	 *            Image size to scale to during decoding
+	 * @param scaleType
+	 *            Type of image scaling into view. Defines which image size is sufficient for the view.
+	 * @param displayOptions
+	 *            {@linkplain DisplayImageOptions Display options} (decoding type, bitmap config and quality options)
+	 */
+	ImageDecoder(byte[] imageData, ImageSize targetImageSize, ViewScaleType scaleType, DisplayImageOptions displayOptions) {
+		this.imageData = imageData;
+		this.imageDataLength = imageData.length;
+		this.targetSize = targetImageSize;
+		this.scaleType = scaleType;
+		this.displayOptions = displayOptions;
+	}
+
+	/** Returns <b>true</b> - if bitmaps can be reused for decoding on this device (Android 3.0+) */
+	static boolean isBitmapReuseSupported() {
+		return IN_BITMAP_FIELD != null;
+	}
+
+	/** Sets pool of bitmaps which can be reused for decoding. Decoded bitmaps are mutable if pool is set. */
+	void setBitmapPool(BitmapPool bitmapPool) {
+		this.bitmapPool = isBitmapReuseSupported() ? bitmapPool : null;
 	}
 
 	/**
 	 * Decodes image from URL into {@link Bitmap}. Image is scaled close to incoming {@link ImageSize image size} during
 	 * decoding. Initial image size is reduced by the power of 2 (according Android recommendations)
-	 * 
+	 *
 	 * @return Decoded bitmap
 	 * @throws IOException
 	 */
 	public Bitmap decodeFile() throws IOException {
-		Options decodeOptions = getBitmapOptionsForImageDecoding();
+		return decode(prepareDecodingOptions());
+	}
+
+	/**
+	 * Decodes image into {@link Bitmap} using options prepared by {@link #prepareDecodingOptions()}. Image stream
+	 * opened by {@link #prepareDecodingOptions()} is used and closed; image is opened again only on repeated call.
+	 *
+	 * @return Decoded bitmap
+	 * @throws IOException
+	 */
+	public Bitmap decode(Options decodeOptions) throws IOException {
+		Bitmap reusedBitmap = null;
+		if (bitmapPool != null) {
+			setOption(IN_MUTABLE_FIELD, decodeOptions, Boolean.TRUE);
+			reusedBitmap = takeReusableBitmap(decodeOptions);
+			setOption(IN_BITMAP_FIELD, decodeOptions, reusedBitmap);
+		}
 
+		Bitmap result = null;
+		try {
+			result = decodeStream(decodeOptions);
+		} catch (IllegalArgumentException e) {
+			if (reusedBitmap == null) throw e;
+			// Image can't be decoded into pooled bitmap. Decode it into new bitmap.
+			setOption(IN_BITMAP_FIELD, decodeOptions, null);
+			bitmapPool.put(reusedBitmap);
+			reusedBitmap = null;
+			result = decodeStream(decodeOptions);
+		} finally {
+			if (result == null && reusedBitmap != null) {
+				bitmapPool.put(reusedBitmap); // Decoding failed, so pooled bitmap isn't used
+			}
+		}
+		return result;
+	}
+
+	private Bitmap decodeStream(Options decodeOptions) throws IOException {
 		Bitmap result;
-		InputStream is = imageUrl.openStream();
+		InputStream is = takeStream();
 		try {
 			result = BitmapFactory.decodeStream(is, null, decodeOptions);
 		} finally {
@@ -54,28 +176,207 @@ final class ImageDecoder {
 		return result;
 	}
 
-	private Options getBitmapOptionsForImageDecoding() throws IOException {
-		Options options = new Options();
-		InputStream is = imageUrl.openStream();
+	/**
+	 * Returns estimated size (in bytes) of bitmap which will be decoded with passed options (prepared by
+	 * {@link #prepareDecodingOptions()}). Returns 0 if image bounds are unknown.
+	 */
+	int estimateBitmapSize(Options decodeOptions) {
+		if (imageWidth <= 0 || imageHeight <= 0) {
+			return 0;
+		}
+		int sampleSize = Math.max(decodeOptions.inSampleSize, 1);
+		int width = (imageWidth + sampleSize - 1) / sampleSize;
+		int height = (imageHeight + sampleSize - 1) / sampleSize;
+		return width * height * getBytesPerPixel(decodeOptions.inPreferredConfig);
+	}
+
+	/**
+	 * Changes decoding options for the next level of {@linkplain ImageQuality reduced quality}: sample size is doubled
+	 * at first and then {@link Config#RGB_565 RGB_565} config is used (if current config takes more than 2 bytes per
+	 * pixel).
+	 * 
+	 * @return Quality which image will be decoded with
+	 */
+	ImageQuality reduceQuality(Options decodeOptions, ImageQuality quality) {
+		switch (quality) {
+			case FULL:
+				decodeOptions.inSampleSize = Math.max(decodeOptions.inSampleSize, 1) * 2;
+				return ImageQuality.REDUCED_SIZE;
+			default:
+				if (getBytesPerPixel(decodeOptions.inPreferredConfig) > 2) {
+					decodeOptions.inPreferredConfig = Config.RGB_565;
+				}
+				return ImageQuality.REDUCED_SIZE_AND_COLORS;
+		}
+	}
+
+	private static int getBytesPerPixel(Config config) {
+		if (config == null) {
+			return 4; // ARGB_8888 is used by default
+		}
+		switch (config) {
+			case ALPHA_8:
+				return 1;
+			case RGB_565:
+			case ARGB_4444:
+				return 2;
+			default:
+				return 4;
+		}
+	}
+
+	/** Returns pooled bitmap which decoded image will fit exactly or <b>null</b> */
+	private Bitmap takeReusableBitmap(Options decodeOptions) {
+		int sampleSize = Math.max(decodeOptions.inSampleSize, 1);
+		if (imageWidth <= 0 || imageHeight <= 0 || (sampleSize > 1 && !SCALED_BITMAP_REUSE_SUPPORTED)) {
+			return null;
+		}
+		int width = (imageWidth + sampleSize - 1) / sampleSize;
+		int height = (imageHeight + sampleSize - 1) / sampleSize;
+		Config config = decodeOptions.inPreferredConfig != null ? decodeOptions.inPreferredConfig : Config.ARGB_8888;
+		return bitmapPool.get(width, height, config);
+	}
+
+	private static void setOption(Field field, Options options, Object value) {
+		if (field == null) return;
 		try {
-			options.inSampleSize = computeImageScale(is);
-		} finally {
-			is.close();
+			field.set(options, value);
+		} catch (IllegalAccessException e) {
+			// Do nothing
+		}
+	}
+
+	/** Returns public field of {@link Options} or <b>null</b> if there is no such field on this Android version */
+	private static Field getOptionsField(String name) {
+		try {
+			return Options.class.getField(name);
+		} catch (NoSuchFieldException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads image bounds and prepares options for image decoding. Image isn't decoded itself so this operation is much
+	 * cheaper than {@link #decode(Options)}. Image stream stays opened for following decoding, so {@link #close()}
+	 * must be called if the image won't be decoded.
+	 *
+	 * @throws IOException
+	 */
+	public Options prepareDecodingOptions() throws IOException {
+		Options bounds;
+		if (imageData != null) {
+			bounds = decodeBounds(new ByteArrayInputStream(imageData, 0, imageDataLength));
+		} else {
+			InputStream is = imageUrl.openStream();
+			byte[] buffer = new byte[HEADER_BUFFER_SIZE];
+			int length;
+			try {
+				length = readHeader(is, buffer);
+			} catch (IOException e) {
+				is.close();
+				throw e;
+			}
+			bounds = decodeBounds(new ByteArrayInputStream(buffer, 0, length));
+
+			if (length < HEADER_BUFFER_SIZE) {
+				// Whole image is read already
+				is.close();
+				imageData = buffer;
+				imageDataLength = length;
+			} else if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+				// Image header is larger than buffer. Read bounds from whole image.
+				is.close();
+				is = imageUrl.openStream();
+				try {
+					bounds = decodeBounds(is);
+				} finally {
+					is.close();
+				}
+			} else {
+				imageStream = is;
+				header = buffer;
+				headerLength = length;
+			}
+		}
+
+		imageWidth = bounds.outWidth;
+		imageHeight = bounds.outHeight;
+
+		Options options = new Options();
+		options.inSampleSize = computeImageScale(bounds);
+		options.inPreferredConfig = displayOptions.getBitmapConfig();
+		options.inDither = displayOptions.isDither();
+		if (displayOptions.isPurgeable()) {
+			setOption(IN_PURGEABLE_FIELD, options, Boolean.TRUE);
+			setOption(IN_INPUT_SHAREABLE_FIELD, options, displayOptions.isInputShareable());
 		}
 		return options;
 	}
 
-	private int computeImageScale(InputStream imageStream) {
-		int width = targetSize.width;
-		int height = targetSize.height;
+	/** Closes image stream opened by {@link #prepareDecodingOptions()} if image wasn't decoded */
+	public void close() {
+		if (imageStream != null) {
+			try {
+				imageStream.close();
+			} catch (IOException e) {
+				// Do nothing
+			}
+			imageStream = null;
+			header = null;
+		}
+	}
 
-		// decode image size
+	/** Returns stream for decoding: stream opened already (with read header) or new one */
+	private InputStream takeStream() throws IOException {
+		if (imageData != null) {
+			return new ByteArrayInputStream(imageData, 0, imageDataLength);
+		} else if (imageStream != null) {
+			InputStream is = new SequenceInputStream(new ByteArrayInputStream(header, 0, headerLength), imageStream);
+			imageStream = null;
+			header = null;
+			return is;
+		} else {
+			return imageUrl.openStream();
+		}
+	}
+
+	/** Reads stream into buffer until buffer is full or stream is ended. Returns count of read bytes. */
+	private int readHeader(InputStream is, byte[] buffer) throws IOException {
+		int length = 0;
+		while (length < buffer.length) {
+			int count = is.read(buffer, length, buffer.length - length);
+			if (count == -1) {
+				break;
+			}
+			length += count;
+		}
+		return length;
+	}
+
+	private Options decodeBounds(InputStream imageStream) {
 		Options options = new Options();
 		options.inJustDecodeBounds = true;
 		BitmapFactory.decodeStream(imageStream, null, options);
+		return options;
+	}
+
+	/**
+	 * Computes sample size for image decoding. For {@linkplain ViewScaleType#CROP cropping} both sides of decoded image
+	 * mustn't be less than target sides, for {@linkplain ViewScaleType#FIT_INSIDE fitting} it's enough for one side.
+	 * Unknown target side doesn't limit scaling.
+	 */
+	private int computeImageScale(Options options) {
+		boolean fit = scaleType == ViewScaleType.FIT_INSIDE;
+		// Unknown side must be always satisfied for cropping and never for fitting
+		int unknownSide = fit ? Integer.MAX_VALUE : 0;
+		int width = targetSize.width > 0 ? targetSize.width : unknownSide;
+		int height = targetSize.height > 0 ? targetSize.height : unknownSide;
+		if (width == unknownSide && height == unknownSide) {
+			return 1;
+		}
 
 		int scale = 1;
-		switch (decodingType) {
+		switch (displayOptions.getDecodingType()) {
 			default:
 			case FAST:
 				// Find the correct scale value. It should be the power of 2.
@@ -83,7 +384,9 @@ final class ImageDecoder {
 				int height_tmp = options.outHeight;
 
 				while (true) {
-					if (width_tmp / 2 < width || height_tmp / 2 < height) break;
+					boolean widthTooSmall = width_tmp / 2 < width;
+					boolean heightTooSmall = height_tmp / 2 < height;
+					if (fit ? widthTooSmall && heightTooSmall : widthTooSmall || heightTooSmall) break;
 					width_tmp /= 2;
 					height_tmp /= 2;
 					scale *= 2;
@@ -92,9 +395,9 @@ final class ImageDecoder {
 			case MEMORY_SAVING:
 				int widthScale = (int) (Math.floor(((double) options.outWidth) / width));
 				int heightScale = (int) (Math.floor(((double) options.outHeight) / height));
-				int minScale = Math.min(widthScale, heightScale);
-				if (minScale > 1) {
-					scale = minScale;
+				int sufficientScale = fit ? Math.max(widthScale, heightScale) : Math.min(widthScale, heightScale);
+				if (sufficientScale > 1) {
+					scale = sufficientScale;
 				}
 				break;
 		}
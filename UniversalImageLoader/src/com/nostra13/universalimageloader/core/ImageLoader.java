@@ -1,28 +1,57 @@
 package com.nostra13.universalimageloader.core;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.lang.reflect.Field;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.WeakHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import android.app.Activity;
 import android.content.Context;
 import android.content.res.Configuration;
 import android.graphics.Bitmap;
+import android.graphics.Bitmap.CompressFormat;
+import android.graphics.BitmapFactory.Options;
 import android.util.Log;
-import android.view.ViewGroup.LayoutParams;
+import android.view.ViewTreeObserver;
+import android.view.ViewTreeObserver.OnPreDrawListener;
 import android.widget.ImageView;
 
+import com.nostra13.universalimageloader.cache.disc.BaseDiscCache;
+import com.nostra13.universalimageloader.cache.disc.DiscCacheAware;
+import com.nostra13.universalimageloader.cache.disc.impl.RawBitmapDiscCache;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
+import com.nostra13.universalimageloader.cache.memory.CostAwareMemoryCache;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
 import com.nostra13.universalimageloader.utils.FileUtils;
 
 /**
@@ -41,22 +70,112 @@ public class ImageLoader {
 	private static final String ERROR_IMAGEVIEW_CONTEXT = "ImageView context must be of Activity type"
 			+ "If you create ImageView in code you must pass your current activity in ImageView constructor (e.g. new ImageView(MyActivity.this); or new ImageView(getActivity())).";
 
-	private static final String LOG_START_DISPLAY_IMAGE_TASK = "Start display image task [%s]";
+	private static final String LOG_DEFER_DISPLAYING = "ImageView isn't laid out yet. Display image after layout [%s]";
+	private static final String LOG_START_DISPLAY_IMAGE_TASK = "Start display image task [%s] (%s stage)";
 	private static final String LOG_LOAD_IMAGE_FROM_INTERNET = "Load image from Internet [%s]";
 	private static final String LOG_LOAD_IMAGE_FROM_MEMORY_CACHE = "Load image from memory cache [%s]";
 	private static final String LOG_LOAD_IMAGE_FROM_DISC_CACHE = "Load image from disc cache [%s]";
 	private static final String LOG_CACHE_IMAGE_IN_MEMORY = "Cache image in memory [%s]";
 	private static final String LOG_CACHE_IMAGE_ON_DISC = "Cache image on disc [%s]";
+	private static final String LOG_LOAD_IMAGE_FROM_THUMBNAIL_CACHE = "Load image from thumbnail disc cache [%s]";
+	private static final String LOG_CACHE_THUMBNAIL_ON_DISC = "Cache thumbnail on disc [%s]";
+	private static final String LOG_DELETE_BROKEN_THUMBNAIL = "Thumbnail can't be decoded. Load image from original [%s]";
 	private static final String LOG_DISPLAY_IMAGE_IN_IMAGEVIEW = "Display image in ImageView [%s]";
+	private static final String LOG_LOAD_PREVIEW_FROM_MEMORY_CACHE = "Load preview of image from memory cache [%s]";
+	private static final String LOG_DECODE_PREVIEW = "Decode preview of image [%s]";
+	private static final String LOG_DISPLAY_PREVIEW_IN_IMAGEVIEW = "Display preview of image in ImageView [%s]";
+	private static final String LOG_ATTACH_TO_LOADING_TASK = "Attach to already running display image task [%s]";
+	private static final String LOG_DISCARD_QUEUED_TASK = "Discard display image task which is not actual anymore [%s]";
+	private static final String LOG_DROP_QUEUED_TASK = "Drop display image task because task queue is full [%s]";
+	private static final String LOG_CANCEL_DOWNLOADING = "Cancel downloading of image which is not actual anymore [%s]";
+	private static final String LOG_WAITING_FOR_RESUME = "ImageLoader is paused. Waiting... [%s]";
+	private static final String LOG_RESUME_AFTER_PAUSE = ".. Resume loading [%s]";
+	private static final String LOG_REDUCE_QUALITY = "Not enough free memory. Decode image with reduced quality (%s) [%s]";
+	private static final String LOG_UPGRADE_QUALITY = "Image of reduced quality is displayed. Reload it with full quality [%s]";
+	private static final String LOG_RETRY_DECODING_AFTER_OOM = "Not enough memory for decoding. Trim memory cache and retry [%s]";
+	private static final String LOG_RELOAD_BROKEN_CACHED_IMAGE = "Image cached on disc can't be decoded. Reload it from Internet [%s]";
+	private static final String LOG_TRIM_MEMORY = "Trim memory (level %d)";
+	private static final String LOG_MEMORY_CALLBACKS_NOT_SUPPORTED = "System memory callbacks aren't supported. Call onLowMemory() and trimMemory() of ImageLoader from your application";
 
-	private static final int ATTEMPT_COUNT_TO_DECODE_BITMAP = 3;
+	private static final String ERROR_CANT_RENAME_FILE = "Can't rename downloaded file %s";
+	private static final String TEMP_FILE_POSTFIX = ".tmp";
+
+	private static final int PREFETCH_TASK_PRIORITY = Integer.MIN_VALUE;
+	/** Preview of image is decoded with sample size which is greater than sample size of full image in so many times */
+	private static final int PREVIEW_SAMPLE_SIZE_FACTOR = 8;
+	private static final int THUMBNAIL_COMPRESS_QUALITY = 90;
+	/** Maximum count of remembered string keys of images cached in memory */
+	private static final int MAX_MEMORY_CACHE_KEY_STRINGS = 512;
+
+	/** Orders tasks by priority descending, tasks with equal priority - from the newest to the oldest */
+	private static final Comparator<DisplayImageTask> DROP_ORDER_COMPARATOR = new Comparator<DisplayImageTask>() {
+		@Override
+		public int compare(DisplayImageTask task1, DisplayImageTask task2) {
+			if (task1.priority != task2.priority) {
+				return task1.priority > task2.priority ? -1 : 1;
+			}
+			return task1.sequence > task2.sequence ? -1 : (task1.sequence == task2.sequence ? 0 : 1);
+		}
+	};
+
+	/** Memory trim levels (see <b>android.content.ComponentCallbacks2</b>) */
+	private static final int TRIM_MEMORY_COMPLETE = 80;
+	private static final int TRIM_MEMORY_MODERATE = 60;
+	private static final int TRIM_MEMORY_BACKGROUND = 40;
+	private static final int TRIM_MEMORY_RUNNING_CRITICAL = 15;
+	private static final int TRIM_MEMORY_RUNNING_LOW = 10;
+	private static final int TRIM_MEMORY_RUNNING_MODERATE = 5;
+	/** Memory cache is trimmed to this percent of its size if application is running and memory is getting low */
+	private static final int TRIM_PERCENT_RUNNING_MODERATE = 75;
+	/** Memory cache is trimmed to this percent of its size if application is running and memory is low */
+	private static final int TRIM_PERCENT_RUNNING_LOW = 50;
+	/** Memory cache is trimmed to this percent of its size if application is in background */
+	private static final int TRIM_PERCENT_BACKGROUND = 25;
+	/** Memory cache is trimmed to this percent of its size if application is in the middle of background list */
+	private static final int TRIM_PERCENT_MODERATE = 10;
 
 	private ImageLoaderConfiguration configuration;
-	private ExecutorService imageLoadingExecutor;
-	private ExecutorService cachedImageLoadingExecutor;
+	/** Executor for image downloading */
+	private ThreadPoolExecutor networkExecutor;
+	/** Executor for reading of images cached on disc */
+	private ThreadPoolExecutor discExecutor;
+	/** Executor for image decoding */
+	private ThreadPoolExecutor decodingExecutor;
+	/** Source of submission order numbers for display image tasks */
+	private final AtomicLong taskSequence = new AtomicLong();
 	private ImageLoadingListener emptyListener;
 
-	private Map<ImageView, String> cacheKeyForImageView = Collections.synchronizedMap(new WeakHashMap<ImageView, String>());
+	/** Binding states of ImageViews. Binding of ImageView is reused for all images displayed in it. */
+	private final Map<ImageView, ImageViewBinding> imageViewBindings = Collections.synchronizedMap(new WeakHashMap<ImageView, ImageViewBinding>());
+	/**
+	 * References of ImageViews which display bitmaps (tracked only if bitmap pool is used). Bitmap of collected ImageView
+	 * is released when its reference comes into {@link #collectedImageViews}. Used on UI thread only.
+	 */
+	private final Set<DisplayedBitmapReference> displayedBitmapReferences = new HashSet<DisplayedBitmapReference>();
+	private final ReferenceQueue<ImageView> collectedImageViews = new ReferenceQueue<ImageView>();
+	/**
+	 * String keys of images which were put into memory cache, so memory cache lookup of image displayed in ImageView
+	 * before doesn't build its string key
+	 */
+	private final Map<MemoryCacheKey, String> memoryCacheKeyStrings = new MemoryCacheKeyStrings();
+	/** Qualities of bitmaps which were decoded with {@linkplain ImageQuality reduced quality} */
+	private final Map<Bitmap, ImageQuality> reducedQualityBitmaps = Collections.synchronizedMap(new WeakHashMap<Bitmap, ImageQuality>());
+	/** Display image tasks which are not finished yet (key - memory cache key) */
+	private final Map<MemoryCacheKey, DisplayImageTask> loadingTasks = new HashMap<MemoryCacheKey, DisplayImageTask>();
+	/**
+	 * Queued tasks of {@link Stage#NETWORK NETWORK} and {@link Stage#DISC DISC} stages which are dropped if queue is
+	 * full (the last task is dropped first). Can contain tasks which were taken by executor already but weren't started
+	 * yet. Guarded by {@link #loadingTasks} lock.
+	 */
+	private final SortedSet<DisplayImageTask> droppableNetworkTasks = new TreeSet<DisplayImageTask>(DROP_ORDER_COMPARATOR);
+	private final SortedSet<DisplayImageTask> droppableDiscTasks = new TreeSet<DisplayImageTask>(DROP_ORDER_COMPARATOR);
+	/** Prefetch groups which can be in progress. Groups are cancelled if memory is critically low. */
+	private final Map<PrefetchGroup, Boolean> prefetchGroups = Collections.synchronizedMap(new WeakHashMap<PrefetchGroup, Boolean>());
+	/** Locks for image URLs. Prevent simultaneous loading of the same image on disc by several tasks. */
+	private final Map<String, UrlLock> urlLocks = new HashMap<String, UrlLock>();
+
+	private final Object pauseLock = new Object();
+	private boolean paused = false;
 
 	private boolean loggingEnabled = false;
 
@@ -80,6 +199,8 @@ public class ImageLoader {
 	/**
 	 * Initializes ImageLoader's singletone instance with configuration. Method shoiuld be called <b>once</b> (each
 	 * following call will have no effect)<br />
+	 * ImageLoader registers for system memory callbacks of application (Android 4.0+), so it frees memory by itself
+	 * (see {@link #trimMemory(int)}).<br />
 	 * 
 	 * @param configuration
 	 *            {@linkplain ImageLoaderConfiguration ImageLoader configuration}
@@ -93,6 +214,9 @@ public class ImageLoader {
 		if (this.configuration == null) {
 			this.configuration = configuration;
 			emptyListener = new EmptyListener();
+			if (!MemoryCallbacks.register(configuration.context, this)) {
+				Log.i(TAG, LOG_MEMORY_CALLBACKS_NOT_SUPPORTED);
+			}
 		}
 	}
 
@@ -191,52 +315,518 @@ public class ImageLoader {
 			options = configuration.defaultDisplayImageOptions;
 		}
 
+		ImageViewBinding binding = getBinding(imageView);
+		binding.deferredDisplay = null;
+
 		if (url == null || url.length() == 0) {
-			cacheKeyForImageView.remove(imageView);
+			unbind(binding);
 			if (options.isShowImageForEmptyUrl()) {
-				imageView.setImageResource(options.getImageForEmptyUrl());
+				setImageResource(imageView, options.getImageForEmptyUrl());
 			} else {
-				imageView.setImageBitmap(null);
+				setImageBitmap(imageView, null);
 			}
 			return;
 		}
 
-		ImageSize targetSize = getImageSizeScaleTo(imageView);
-		String memoryCacheKey = MemoryCacheKeyUtil.generateKey(url, targetSize);
-		cacheKeyForImageView.put(imageView, memoryCacheKey);
+		if (!ImageSizeResolver.resolve(imageView, binding.targetSize)) {
+			if (ImageSizeResolver.isKnownAfterLayout(imageView)) {
+				deferDisplaying(url, imageView, binding, options, listener);
+				return;
+			}
+			setDefaultImageSize(imageView, binding.targetSize);
+		}
+		displayImage(url, imageView, binding, options, listener);
+	}
 
-		Bitmap bmp = configuration.memoryCache.get(memoryCacheKey);
-		if (bmp != null && !bmp.isRecycled()) {
+	/**
+	 * Displays image scaled to size of ImageView {@linkplain ImageViewBinding binding}. Image is taken from memory
+	 * cache or loading task is submitted. Displaying of image from memory cache doesn't allocate objects (except
+	 * drawable which ImageView creates for bitmap) if the image was cached by this ImageLoader, ImageView displayed
+	 * any image before and memory cache lookup doesn't allocate.
+	 */
+	private void displayImage(String url, ImageView imageView, ImageViewBinding binding, DisplayImageOptions options, ImageLoadingListener listener) {
+		ViewScaleType scaleType = ViewScaleType.fromImageView(imageView);
+		MemoryCacheKey memoryCacheKey = bind(binding, url, scaleType);
+
+		Bitmap bmp = getCachedBitmap(getStringKey(memoryCacheKey));
+		if (bmp == null && scaleType == ViewScaleType.FIT_INSIDE) {
+			// Image decoded for cropping (i.e. prefetched image) fits inside view too
+			if (binding.cropKey == null) {
+				binding.cropKey = new MemoryCacheKey(url, binding.targetSize, ViewScaleType.CROP);
+			} else {
+				binding.cropKey.set(url, binding.targetSize.width, binding.targetSize.height, ViewScaleType.CROP);
+			}
+			bmp = getCachedBitmap(getStringKey(binding.cropKey));
+		}
+		if (bmp != null) {
 			if (loggingEnabled) Log.i(TAG, String.format(LOG_LOAD_IMAGE_FROM_MEMORY_CACHE, memoryCacheKey));
 			listener.onLoadingStarted();
-			imageView.setImageBitmap(bmp);
+			setImageBitmap(imageView, bmp);
+			releaseCachedBitmap(bmp);
+			setTileSource(imageView, url);
 			listener.onLoadingComplete();
+			if (isQualityUpgradePossible(bmp)) {
+				if (loggingEnabled) Log.i(TAG, String.format(LOG_UPGRADE_QUALITY, memoryCacheKey));
+				ImageLoadingInfo imageLoadingInfo = createLoadingInfo(url, imageView, binding, options, emptyListener);
+				imageLoadingInfo.qualityUpgrade = true;
+				submitLoading(imageLoadingInfo, options.getPriority());
+			}
 		} else {
 			listener.onLoadingStarted();
-			checkExecutors();
+			ImageLoadingInfo imageLoadingInfo = createLoadingInfo(url, imageView, binding, options, listener);
+			Bitmap preview = options.isDisplayPreviewFirst() ? findCachedPreview(url) : null;
+			imageLoadingInfo.previewDisplayed = preview != null;
+			submitLoading(imageLoadingInfo, options.getPriority());
+
+			if (preview != null) {
+				if (loggingEnabled) Log.i(TAG, String.format(LOG_LOAD_PREVIEW_FROM_MEMORY_CACHE, memoryCacheKey));
+				setImageBitmap(imageView, preview);
+				releaseCachedBitmap(preview);
+			} else if (options.isShowStubImage()) {
+				setImageResource(imageView, options.getStubImage());
+			} else {
+				setImageBitmap(imageView, null);
+			}
+		}
+	}
+
+	/**
+	 * Creates request for image loading and registers it in ImageView binding (so the loading can be discarded when
+	 * ImageView is bound to another image)
+	 */
+	private ImageLoadingInfo createLoadingInfo(String url, ImageView imageView, ImageViewBinding binding, DisplayImageOptions options,
+			ImageLoadingListener listener) {
+		ImageSize targetSize = new ImageSize(binding.targetSize.width, binding.targetSize.height);
+		MemoryCacheKey memoryCacheKey = new MemoryCacheKey(binding.memoryCacheKey);
+		binding.loadingKey = memoryCacheKey;
+		return new ImageLoadingInfo(url, imageView, targetSize, memoryCacheKey, options, listener);
+	}
+
+	/** Returns binding of ImageView (creates it on first call for the ImageView) */
+	private ImageViewBinding getBinding(ImageView imageView) {
+		ImageViewBinding binding = imageViewBindings.get(imageView);
+		if (binding == null) {
+			binding = new ImageViewBinding();
+			imageViewBindings.put(imageView, binding);
+		}
+		return binding;
+	}
+
+	/**
+	 * Binds ImageView to image with passed URL and size of the binding. Loading of image which was bound to the
+	 * ImageView before is discarded. Returns memory cache key of bound image (it's reused by next binding).
+	 */
+	private MemoryCacheKey bind(ImageViewBinding binding, String url, ViewScaleType scaleType) {
+		ImageSize targetSize = binding.targetSize;
+		synchronized (imageViewBindings) {
+			if (binding.memoryCacheKey == null) {
+				binding.memoryCacheKey = new MemoryCacheKey(url, targetSize, scaleType);
+			} else {
+				binding.memoryCacheKey.set(url, targetSize.width, targetSize.height, scaleType);
+			}
+			binding.bound = true;
+		}
+		if (binding.loadingKey != null && !binding.loadingKey.equals(binding.memoryCacheKey)) {
+			discardQueuedTask(binding.loadingKey);
+			binding.loadingKey = null;
+		}
+		return binding.memoryCacheKey;
+	}
+
+	/** Unbinds ImageView from image. Loading of image which was bound to the ImageView is discarded. */
+	private void unbind(ImageViewBinding binding) {
+		synchronized (imageViewBindings) {
+			binding.bound = false;
+		}
+		discardQueuedTask(binding.loadingKey);
+		binding.loadingKey = null;
+	}
+
+	/**
+	 * Postpones image displaying until ImageView is laid out, so image is decoded for actual view size. Stub image is
+	 * displayed meanwhile.
+	 */
+	private void deferDisplaying(final String url, final ImageView imageView, final ImageViewBinding binding, final DisplayImageOptions options,
+			final ImageLoadingListener listener) {
+		if (loggingEnabled) Log.i(TAG, String.format(LOG_DEFER_DISPLAYING, url));
+		unbind(binding);
+
+		OnPreDrawListener layoutListener = new OnPreDrawListener() {
+			@Override
+			public boolean onPreDraw() {
+				ViewTreeObserver observer = imageView.getViewTreeObserver();
+				if (observer.isAlive()) {
+					observer.removeOnPreDrawListener(this);
+				}
+				// Displaying can be cancelled or replaced by another request for this ImageView
+				if (binding.deferredDisplay == this) {
+					binding.deferredDisplay = null;
+					if (!ImageSizeResolver.resolve(imageView, binding.targetSize)) {
+						setDefaultImageSize(imageView, binding.targetSize);
+					}
+					displayImage(url, imageView, binding, options, listener);
+				}
+				return true;
+			}
+		};
+		binding.deferredDisplay = layoutListener;
+		imageView.getViewTreeObserver().addOnPreDrawListener(layoutListener);
+
+		if (options.isShowStubImage()) {
+			setImageResource(imageView, options.getStubImage());
+		} else {
+			setImageBitmap(imageView, null);
+		}
+	}
+
+	/**
+	 * Whether bitmap was decoded with reduced quality and there is enough free memory for its decoding with full quality
+	 * now
+	 */
+	private boolean isQualityUpgradePossible(Bitmap bmp) {
+		ImageQuality quality = reducedQualityBitmaps.get(bmp);
+		if (quality == null) return false;
+		return configuration.memoryGovernor.fitsHeapHeadroom(bmp.getRowBytes() * bmp.getHeight() * quality.sizeFactor);
+	}
+
+	/**
+	 * Returns quality which bitmap loaded by ImageLoader was decoded with. Image is decoded with reduced quality if
+	 * there is not enough free memory in heap; such image is reloaded with full quality on its next displaying when
+	 * memory is freed.
+	 * 
+	 * @param bitmap
+	 *            Bitmap displayed by ImageLoader (i.e. from {@link ImageView#getDrawable()})
+	 */
+	public ImageQuality getImageQuality(Bitmap bitmap) {
+		ImageQuality quality = reducedQualityBitmaps.get(bitmap);
+		return quality == null ? ImageQuality.FULL : quality;
+	}
+
+	/**
+	 * Returns the largest bitmap of image (with any size) cached in memory or <b>null</b> if there is no such. Returned
+	 * bitmap must be released by {@link #releaseCachedBitmap(Bitmap)}.
+	 */
+	private Bitmap findCachedPreview(String url) {
+		String previewKey = null;
+		int previewWidth = 0;
+		for (String key : new ArrayList<String>(configuration.memoryCache.keys())) {
+			if (MemoryCacheKeyUtil.isKeyOfImage(key, url)) {
+				Bitmap bmp = configuration.memoryCache.get(key);
+				if (bmp != null && !bmp.isRecycled() && bmp.getWidth() > previewWidth) {
+					previewKey = key;
+					previewWidth = bmp.getWidth();
+				}
+			}
+		}
+		return previewKey == null ? null : getCachedBitmap(previewKey);
+	}
+
+	/**
+	 * Returns bitmap cached in memory or <b>null</b> if there is no such. If bitmap pool is used then returned bitmap
+	 * is retained (so it isn't reused for other image if it's evicted) and must be released by
+	 * {@link #releaseCachedBitmap(Bitmap)} after displaying.
+	 */
+	private Bitmap getCachedBitmap(String memoryCacheKey) {
+		Bitmap bmp = configuration.memoryCache.get(memoryCacheKey);
+		if (bmp == null || bmp.isRecycled()) {
+			return null;
+		}
+		BitmapPool bitmapPool = configuration.bitmapPool;
+		if (bitmapPool != null) {
+			bitmapPool.retain(bmp);
+			// Bitmap could be evicted and reused before it was retained. Then it isn't cached by the key anymore.
+			if (configuration.memoryCache.get(memoryCacheKey) != bmp) {
+				bitmapPool.release(bmp);
+				return null;
+			}
+		}
+		return bmp;
+	}
+
+	/** Returns string key which image is cached in memory by. Remembered key is returned if image was cached before. */
+	private String getStringKey(MemoryCacheKey memoryCacheKey) {
+		String stringKey;
+		synchronized (memoryCacheKeyStrings) {
+			stringKey = memoryCacheKeyStrings.get(memoryCacheKey);
+		}
+		return stringKey != null ? stringKey : memoryCacheKey.toString();
+	}
+
+	/** Releases bitmap returned by {@link #getCachedBitmap(String)} */
+	private void releaseCachedBitmap(Bitmap bmp) {
+		if (configuration.bitmapPool != null) {
+			configuration.bitmapPool.release(bmp);
+		}
+	}
+
+	/** Sets bitmap into ImageView and tracks bitmap displaying for bitmap pool. Must be called on UI thread. */
+	private void setImageBitmap(ImageView imageView, Bitmap bitmap) {
+		imageView.setImageBitmap(bitmap);
+		trackDisplayedBitmap(imageView, bitmap);
+	}
+
+	/** Sets image resource into ImageView and tracks bitmap displaying for bitmap pool. Must be called on UI thread. */
+	private void setImageResource(ImageView imageView, int resId) {
+		imageView.setImageResource(resId);
+		trackDisplayedBitmap(imageView, null);
+	}
+
+	/**
+	 * Passes original image cached on disc to {@link TiledImageView} for decoding of tiles on zoom. Passes null if image
+	 * isn't cached on disc.
+	 */
+	private void setTileSource(ImageView imageView, String url) {
+		if (imageView instanceof TiledImageView) {
+			DiscCacheAware discCache = configuration.discCache;
+			File imageFile;
+			if (discCache instanceof BaseDiscCache) {
+				// Doesn't touch usage of file which isn't cached
+				imageFile = ((BaseDiscCache) discCache).contains(url) ? discCache.get(url) : null;
+			} else {
+				imageFile = discCache.get(url);
+				if (!imageFile.exists()) imageFile = null;
+			}
+			((TiledImageView) imageView).setTileSource(imageFile);
+		}
+	}
+
+	/**
+	 * Retains bitmap displayed in ImageView and releases bitmap which was displayed before, so bitmap evicted from
+	 * memory cache comes into bitmap pool only after it disappears from all ImageViews.
+	 */
+	private void trackDisplayedBitmap(ImageView imageView, Bitmap bitmap) {
+		BitmapPool bitmapPool = configuration.bitmapPool;
+		if (bitmapPool == null) return;
+		releaseBitmapsOfCollectedViews(bitmapPool);
+
+		ImageViewBinding binding = getBinding(imageView);
+		DisplayedBitmapReference reference = binding.displayedBitmap;
+		Bitmap previousBitmap = reference == null ? null : reference.bitmap;
+		if (previousBitmap == bitmap) return;
+
+		if (reference == null) {
+			reference = new DisplayedBitmapReference(imageView, collectedImageViews);
+			displayedBitmapReferences.add(reference);
+			binding.displayedBitmap = reference;
+		}
+		reference.bitmap = bitmap;
+		bitmapPool.retain(bitmap);
+		bitmapPool.release(previousBitmap);
+	}
+
+	/** Releases bitmaps which were displayed in ImageViews collected by GC. Must be called on UI thread. */
+	private void releaseBitmapsOfCollectedViews(BitmapPool bitmapPool) {
+		Reference<? extends ImageView> collectedView;
+		while ((collectedView = collectedImageViews.poll()) != null) {
+			DisplayedBitmapReference reference = (DisplayedBitmapReference) collectedView;
+			displayedBitmapReferences.remove(reference);
+			bitmapPool.release(reference.bitmap);
+			reference.bitmap = null;
+		}
+	}
+
+	/**
+	 * Prefetches images into cache without displaying. Prefetching tasks have the lowest priority, so they are executed
+	 * only when there are no queued display image tasks. Images which are already cached (in memory for
+	 * {@link PrefetchTarget#MEMORY MEMORY} target or on disc for {@link PrefetchTarget#DISC_ONLY DISC_ONLY} target) are
+	 * skipped. Cache limits are applied to prefetched images as usual.<br />
+	 * Prefetching tasks aren't dropped from task queues because of
+	 * {@linkplain ImageLoaderConfiguration.Builder#taskQueueSize(int) queue size limit}, so all passed images are
+	 * prefetched unless {@linkplain #cancelPrefetch(PrefetchGroup) prefetching is cancelled}. Display image tasks aren't
+	 * dropped because of queued prefetching tasks either.<br />
+	 * <b>NOTE:</b> {@link #init(ImageLoaderConfiguration)} method must be called before this method call
+	 * 
+	 * @param urls
+	 *            Image URLs (i.e. "http://site.com/image.png", "file:///mnt/sdcard/image.png")
+	 * @param targetSize
+	 *            Image size which images will be decoded to (for {@link PrefetchTarget#MEMORY MEMORY} target). Should
+	 *            be equal to size of {@link ImageView} which will display the images so they could be found in memory
+	 *            cache. If <b>null</b> - maximum image size from configuration will be used.
+	 * @param options
+	 *            {@linkplain DisplayImageOptions Display image options}. If <b>null</b> - default display image options
+	 *            {@linkplain ImageLoaderConfiguration.Builder#defaultDisplayImageOptions(DisplayImageOptions) from
+	 *            configuration} will be used. Images are cached on disc for {@link PrefetchTarget#DISC_ONLY DISC_ONLY}
+	 *            target and in memory for {@link PrefetchTarget#MEMORY MEMORY} target regardless of options.
+	 * @param target
+	 *            {@linkplain PrefetchTarget Prefetch target}
+	 * @return {@link PrefetchGroup} which can be used for {@linkplain #cancelPrefetch(PrefetchGroup) cancellation}
+	 * @throws RuntimeException
+	 *             if {@link #init(ImageLoaderConfiguration)} method wasn't called before
+	 */
+	public PrefetchGroup prefetch(List<String> urls, ImageSize targetSize, DisplayImageOptions options, PrefetchTarget target) {
+		if (configuration == null) {
+			throw new RuntimeException(ERROR_NOT_INIT);
+		}
+		if (options == null) {
+			options = configuration.defaultDisplayImageOptions;
+		}
+		if (targetSize == null) {
+			targetSize = new ImageSize(configuration.maxImageWidthForMemoryCache, configuration.maxImageHeightForMemoryCache);
+		}
 
-			ImageLoadingInfo imageLoadingInfo = new ImageLoadingInfo(url, imageView, targetSize, options, listener);
-			DisplayImageTask displayImageTask = new DisplayImageTask(imageLoadingInfo);
-			if (displayImageTask.isImageCachedOnDisc()) {
-				cachedImageLoadingExecutor.submit(displayImageTask);
+		PrefetchGroup prefetchGroup = new PrefetchGroup(target);
+		prefetchGroups.put(prefetchGroup, Boolean.TRUE);
+		for (String url : urls) {
+			if (url == null || url.length() == 0) {
+				continue;
+			}
+			ImageLoadingInfo imageLoadingInfo = new ImageLoadingInfo(url, prefetchGroup, targetSize, options);
+			if (target == PrefetchTarget.MEMORY) {
+				Bitmap bmp = configuration.memoryCache.get(imageLoadingInfo.memoryCacheKey.toString());
+				if (bmp != null && !bmp.isRecycled()) continue;
 			} else {
-				imageLoadingExecutor.submit(displayImageTask);
+				if (configuration.discCache.get(url).exists()) continue;
+			}
+			prefetchGroup.memoryCacheKeys.add(imageLoadingInfo.memoryCacheKey);
+			submitLoading(imageLoadingInfo, PREFETCH_TASK_PRIORITY);
+		}
+		return prefetchGroup;
+	}
+
+	/**
+	 * Cancels prefetching of images of passed group. Queued prefetching tasks are discarded, running tasks are
+	 * interrupted as soon as possible.
+	 * 
+	 * @param prefetchGroup
+	 *            Group returned by {@link #prefetch(List, ImageSize, DisplayImageOptions, PrefetchTarget)}
+	 */
+	public void cancelPrefetch(PrefetchGroup prefetchGroup) {
+		prefetchGroup.cancel();
+		prefetchGroups.remove(prefetchGroup);
+		synchronized (prefetchGroup.memoryCacheKeys) {
+			for (MemoryCacheKey memoryCacheKey : prefetchGroup.memoryCacheKeys) {
+				discardQueuedTask(memoryCacheKey);
 			}
+		}
+	}
 
-			if (options.isShowStubImage()) {
-				imageView.setImageResource(options.getStubImage());
+	/**
+	 * Attaches loading request to task which is loading the same image already or creates new task for the request
+	 * and submits it.
+	 */
+	private void submitLoading(ImageLoadingInfo imageLoadingInfo, int priority) {
+		checkExecutors();
+		MemoryCacheKey memoryCacheKey = imageLoadingInfo.memoryCacheKey;
+		synchronized (loadingTasks) {
+			DisplayImageTask displayImageTask = loadingTasks.get(memoryCacheKey);
+			if (displayImageTask != null) {
+				// The same image is loading already. Wait for its result.
+				if (loggingEnabled) Log.i(TAG, String.format(LOG_ATTACH_TO_LOADING_TASK, memoryCacheKey));
+				displayImageTask.attach(imageLoadingInfo);
+				// Re-queue not started task so it takes position of the newest request
+				if (displayImageTask.executor.remove(displayImageTask)) {
+					removeDroppableTask(displayImageTask);
+					displayImageTask.priority = Math.max(displayImageTask.priority, priority);
+					submit(displayImageTask);
+				}
 			} else {
-				imageView.setImageBitmap(null);
+				displayImageTask = new DisplayImageTask(imageLoadingInfo, priority);
+				loadingTasks.put(memoryCacheKey, displayImageTask);
+				if (displayImageTask.isImageCachedOnDisc()) {
+					displayImageTask.stage = Stage.DISC;
+					displayImageTask.executor = discExecutor;
+				} else {
+					displayImageTask.stage = Stage.NETWORK;
+					displayImageTask.executor = networkExecutor;
+				}
+				submit(displayImageTask);
 			}
 		}
 	}
 
 	private void checkExecutors() {
-		if (imageLoadingExecutor == null || imageLoadingExecutor.isShutdown()) {
-			imageLoadingExecutor = Executors.newFixedThreadPool(configuration.threadPoolSize, configuration.displayImageThreadFactory);
+		if (networkExecutor == null || networkExecutor.isShutdown()) {
+			networkExecutor = createExecutor(configuration.threadPoolSize);
 		}
-		if (cachedImageLoadingExecutor == null || cachedImageLoadingExecutor.isShutdown()) {
-			cachedImageLoadingExecutor = Executors.newSingleThreadExecutor(configuration.displayImageThreadFactory);
+		if (discExecutor == null || discExecutor.isShutdown()) {
+			discExecutor = createExecutor(configuration.discThreadPoolSize);
+		}
+		if (decodingExecutor == null || decodingExecutor.isShutdown()) {
+			decodingExecutor = createExecutor(configuration.decodingThreadPoolSize);
+		}
+	}
+
+	/** Creates executor which takes queued tasks in order of their priorities (see {@link TaskComparator}) */
+	private ThreadPoolExecutor createExecutor(int threadPoolSize) {
+		PriorityBlockingQueue<Runnable> taskQueue = new PriorityBlockingQueue<Runnable>(11, new TaskComparator(configuration.tasksProcessingType));
+		return new ThreadPoolExecutor(threadPoolSize, threadPoolSize, 0L, TimeUnit.MILLISECONDS, taskQueue, configuration.displayImageThreadFactory);
+	}
+
+	/** Assigns submission order number to task and {@linkplain #enqueue(DisplayImageTask) enqueues} it */
+	private void submit(DisplayImageTask task) {
+		task.sequence = taskSequence.incrementAndGet();
+		enqueue(task);
+	}
+
+	/**
+	 * Puts task into its executor queue. If count of queued droppable tasks exceeds
+	 * {@linkplain ImageLoaderConfiguration.Builder#taskQueueSize(int) size limit} then the oldest task with the lowest
+	 * priority is dropped and its listeners are notified about failure. Tasks of {@link Stage#DECODING DECODING} stage
+	 * are never dropped: their images are downloaded or opened already. Tasks which prefetch images are never dropped
+	 * too: their images were requested explicitly. Must be called under {@link #loadingTasks} lock.
+	 */
+	private void enqueue(DisplayImageTask task) {
+		task.executor.execute(task);
+
+		SortedSet<DisplayImageTask> droppableTasks = getDroppableTasks(task.stage);
+		if (droppableTasks == null || task.isPrefetchRequested()) {
+			return;
+		}
+		droppableTasks.add(task);
+		while (droppableTasks.size() > configuration.taskQueueSize) {
+			DisplayImageTask taskToDrop = droppableTasks.last();
+			droppableTasks.remove(taskToDrop);
+			if (task.executor.remove(taskToDrop)) { // Otherwise task was taken by executor already
+				if (loggingEnabled) Log.i(TAG, String.format(LOG_DROP_QUEUED_TASK, taskToDrop.imageLoadingInfo.memoryCacheKey));
+				taskToDrop.fireImageLoadingFailedEvent();
+			}
+		}
+	}
+
+	/** Returns queued tasks of passed stage which can be dropped. Returns <b>null</b> if tasks of stage aren't dropped. */
+	private SortedSet<DisplayImageTask> getDroppableTasks(Stage stage) {
+		switch (stage) {
+			case NETWORK:
+				return droppableNetworkTasks;
+			case DISC:
+				return droppableDiscTasks;
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Forgets task which was removed from executor queue (or taken by executor). Must be called under
+	 * {@link #loadingTasks} lock before change of task stage or priority.
+	 */
+	private void removeDroppableTask(DisplayImageTask task) {
+		SortedSet<DisplayImageTask> droppableTasks = getDroppableTasks(task.stage);
+		if (droppableTasks != null) {
+			droppableTasks.remove(task);
+		}
+	}
+
+	/**
+	 * Removes queued (not started) task of image from executor queue if the task isn't actual for any {@link ImageView}
+	 * anymore. Otherwise just releases requests of the task which aren't actual.
+	 * 
+	 * @param memoryCacheKey
+	 *            Memory cache key of image which isn't needed anymore by some {@link ImageView}. Can be null.
+	 */
+	private void discardQueuedTask(MemoryCacheKey memoryCacheKey) {
+		if (memoryCacheKey == null) {
+			return;
+		}
+		synchronized (loadingTasks) {
+			DisplayImageTask task = loadingTasks.get(memoryCacheKey);
+			if (task != null) {
+				task.releaseNotActualRequests();
+				if (task.imageLoadingInfos.isEmpty() && task.executor.remove(task)) {
+					removeDroppableTask(task);
+					if (loggingEnabled) Log.i(TAG, String.format(LOG_DISCARD_QUEUED_TASK, memoryCacheKey));
+					task.detach();
+				}
+			}
 		}
 	}
 
@@ -247,16 +837,48 @@ public class ImageLoader {
 	 *            {@link ImageView} for which display task will be cancelled
 	 */
 	public void cancelDisplayTask(ImageView imageView) {
-		cacheKeyForImageView.remove(imageView);
+		ImageViewBinding binding = imageViewBindings.get(imageView);
+		if (binding != null) {
+			binding.deferredDisplay = null;
+			unbind(binding);
+		}
 	}
 
 	/** Stops all running display image tasks, discards all other scheduled tasks */
 	public void stop() {
-		if (imageLoadingExecutor != null) {
-			imageLoadingExecutor.shutdown();
+		if (networkExecutor != null) {
+			networkExecutor.shutdown();
+		}
+		if (discExecutor != null) {
+			discExecutor.shutdown();
 		}
-		if (cachedImageLoadingExecutor != null) {
-			cachedImageLoadingExecutor.shutdown();
+		if (decodingExecutor != null) {
+			decodingExecutor.shutdown();
+		}
+		synchronized (loadingTasks) {
+			loadingTasks.clear();
+			droppableNetworkTasks.clear();
+			droppableDiscTasks.clear();
+		}
+		resume(); // Release paused tasks so threads of stopped executors can finish
+	}
+
+	/**
+	 * Pauses ImageLoader. Display image tasks won't start new loading (from Internet or disc cache) and decoding until
+	 * ImageLoader is {@linkplain #resume() resumed}. Images cached in memory are still displayed immediately.<br />
+	 * Useful during fast scrolling of lists and grids (see {@link PauseOnScrollListener}).
+	 */
+	public void pause() {
+		synchronized (pauseLock) {
+			paused = true;
+		}
+	}
+
+	/** Resumes waiting display image tasks. Only tasks which are still actual for their ImageViews are executed. */
+	public void resume() {
+		synchronized (pauseLock) {
+			paused = false;
+			pauseLock.notifyAll();
 		}
 	}
 
@@ -267,9 +889,69 @@ public class ImageLoader {
 	public void clearMemoryCache() {
 		if (configuration != null) {
 			configuration.memoryCache.clear();
+			synchronized (memoryCacheKeyStrings) {
+				memoryCacheKeyStrings.clear();
+			}
+			if (configuration.bitmapPool != null) {
+				configuration.bitmapPool.clear();
+			}
 		}
 	}
 
+	/**
+	 * Frees memory according to passed level of memory lack (levels of <b>android.content.ComponentCallbacks2</b>):
+	 * <ul>
+	 * <li>any level - {@linkplain ImageLoaderConfiguration.Builder#bitmapPoolSize(int) bitmap pool} is cleared, queued
+	 * tasks which aren't actual anymore are discarded</li>
+	 * <li><b>TRIM_MEMORY_RUNNING_MODERATE</b> - memory cache is trimmed to 3/4 of its size</li>
+	 * <li><b>TRIM_MEMORY_RUNNING_LOW</b> and <b>TRIM_MEMORY_UI_HIDDEN</b> - memory cache is trimmed to half of its
+	 * size</li>
+	 * <li><b>TRIM_MEMORY_BACKGROUND</b> - memory cache is trimmed to quarter of its size</li>
+	 * <li><b>TRIM_MEMORY_MODERATE</b> - memory cache is trimmed to 1/10 of its size</li>
+	 * <li><b>TRIM_MEMORY_RUNNING_CRITICAL</b> and <b>TRIM_MEMORY_COMPLETE</b> - memory cache is cleared, prefetching
+	 * is cancelled</li>
+	 * </ul>
+	 * Is called by system on Android 4.0+. On older Android versions you can call it from
+	 * <b>onTrimMemory(int)</b> of your application or activity.<br />
+	 * Memory cache is trimmed partially only if it's
+	 * {@link com.nostra13.universalimageloader.cache.memory.LimitedMemoryCacheAware LimitedMemoryCacheAware}.<br />
+	 * Do nothing if {@link #init(ImageLoaderConfiguration)} method wasn't called before.
+	 */
+	public void trimMemory(int level) {
+		if (configuration == null) {
+			return;
+		}
+		if (loggingEnabled) Log.i(TAG, String.format(LOG_TRIM_MEMORY, level));
+
+		if (level >= TRIM_MEMORY_COMPLETE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+			cancelAllPrefetches();
+			clearMemoryCache();
+		} else {
+			if (configuration.bitmapPool != null) {
+				configuration.bitmapPool.clear();
+			}
+			if (level >= TRIM_MEMORY_MODERATE) {
+				configuration.memoryGovernor.trimCacheToPercent(TRIM_PERCENT_MODERATE);
+			} else if (level >= TRIM_MEMORY_BACKGROUND) {
+				configuration.memoryGovernor.trimCacheToPercent(TRIM_PERCENT_BACKGROUND);
+			} else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+				configuration.memoryGovernor.trimCacheToPercent(TRIM_PERCENT_RUNNING_LOW);
+			} else if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+				configuration.memoryGovernor.trimCacheToPercent(TRIM_PERCENT_RUNNING_MODERATE);
+			}
+		}
+		discardNotActualTasks();
+	}
+
+	/**
+	 * Frees all memory which can be freed (the same as {@link #trimMemory(int)} with <b>TRIM_MEMORY_COMPLETE</b> level).
+	 * Is called by system on Android 4.0+. On older Android versions you can call it from <b>onLowMemory()</b> of your
+	 * application or activity.
+	 */
+	public void onLowMemory() {
+		trimMemory(TRIM_MEMORY_COMPLETE);
+	}
+
 	/**
 	 * Clear disc cache.<br />
 	 * Do nothing if {@link #init(ImageLoaderConfiguration)} method wasn't called before.
@@ -277,6 +959,9 @@ public class ImageLoader {
 	public void clearDiscCache() {
 		if (configuration != null) {
 			configuration.discCache.clear();
+			if (configuration.thumbnailDiscCache != null) {
+				configuration.thumbnailDiscCache.clear();
+			}
 		}
 	}
 
@@ -285,254 +970,977 @@ public class ImageLoader {
 		loggingEnabled = true;
 	}
 
+	/** Cancels all prefetching which can be in progress */
+	private void cancelAllPrefetches() {
+		List<PrefetchGroup> groups;
+		synchronized (prefetchGroups) {
+			groups = new ArrayList<PrefetchGroup>(prefetchGroups.keySet());
+		}
+		for (PrefetchGroup prefetchGroup : groups) {
+			cancelPrefetch(prefetchGroup);
+		}
+	}
+
+	/** Discards queued tasks which aren't actual for any {@link ImageView} anymore */
+	private void discardNotActualTasks() {
+		List<MemoryCacheKey> memoryCacheKeys;
+		synchronized (loadingTasks) {
+			memoryCacheKeys = new ArrayList<MemoryCacheKey>(loadingTasks.keySet());
+		}
+		for (MemoryCacheKey memoryCacheKey : memoryCacheKeys) {
+			discardQueuedTask(memoryCacheKey);
+		}
+	}
+
 	/**
-	 * Defines image size for loading at memory (for memory economy) by {@link ImageView} parameters.<br />
-	 * Size computing algorithm:<br />
-	 * 1) Get <b>maxWidth</b> and <b>maxHeight</b>. If both of them are not set then go to step #2.<br />
-	 * 2) Get <b>layout_width</b> and <b>layout_height</b>. If both of them haven't exact value then go to step #3.</br>
-	 * 3) Get device screen dimensions.
+	 * Sets image size for ImageView which size can't be resolved: size of device screen is used (according to screen
+	 * orientation).
 	 */
-	private ImageSize getImageSizeScaleTo(ImageView imageView) {
-		int width = -1;
-		int height = -1;
+	private void setDefaultImageSize(ImageView imageView, ImageSize targetSize) {
+		int width = configuration.maxImageWidthForMemoryCache;
+		int height = configuration.maxImageHeightForMemoryCache;
 
-		// Check maxWidth and maxHeight parameters
-		try {
-			Field maxWidthField = ImageView.class.getDeclaredField("mMaxWidth");
-			Field maxHeightField = ImageView.class.getDeclaredField("mMaxHeight");
-			maxWidthField.setAccessible(true);
-			maxHeightField.setAccessible(true);
-			int maxWidth = (Integer) maxWidthField.get(imageView);
-			int maxHeight = (Integer) maxHeightField.get(imageView);
+		// Consider device screen orientation
+		int screenOrientation = imageView.getContext().getResources().getConfiguration().orientation;
+		if ((screenOrientation == Configuration.ORIENTATION_PORTRAIT && width > height)
+				|| (screenOrientation == Configuration.ORIENTATION_LANDSCAPE && width < height)) {
+			int tmp = width;
+			width = height;
+			height = tmp;
+		}
+		targetSize.width = width;
+		targetSize.height = height;
+	}
 
-			if (maxWidth >= 0 && maxWidth < Integer.MAX_VALUE) {
-				width = maxWidth;
+	/** Locks image URL. Blocks if the URL is locked by another thread. */
+	private UrlLock lockUrl(String url) {
+		UrlLock urlLock;
+		synchronized (urlLocks) {
+			urlLock = urlLocks.get(url);
+			if (urlLock == null) {
+				urlLock = new UrlLock();
+				urlLocks.put(url, urlLock);
 			}
-			if (maxHeight >= 0 && maxHeight < Integer.MAX_VALUE) {
-				height = maxHeight;
+			urlLock.holdCount++;
+		}
+		urlLock.lock.lock();
+		return urlLock;
+	}
+
+	/** Unlocks image URL locked by {@link #lockUrl(String)} */
+	private void unlockUrl(String url, UrlLock urlLock) {
+		urlLock.lock.unlock();
+		synchronized (urlLocks) {
+			urlLock.holdCount--;
+			if (urlLock.holdCount == 0) {
+				urlLocks.remove(url);
 			}
-		} catch (Exception e) {
-			Log.e(TAG, e.getMessage(), e);
 		}
+	}
+
+	/** Lock of image URL. Counts threads which hold or wait for the lock, so unused locks can be removed. */
+	private static final class UrlLock {
+		private final ReentrantLock lock = new ReentrantLock();
+		private int holdCount = 0;
+	}
+
+	/**
+	 * Binding state of {@link ImageView}: size of ImageView and memory cache key of image bound to it. Binding is
+	 * reused for all images displayed in the ImageView, so displaying of image from memory cache allocates nothing.
+	 * Binding is used on UI thread; {@link #memoryCacheKey} and {@link #bound} are changed under
+	 * {@link #imageViewBindings} lock because they are checked by loading tasks.
+	 */
+	private static final class ImageViewBinding {
+		final ImageSize targetSize = new ImageSize(0, 0);
+		/** Key of bound image (is changed for each binding). Can be null. */
+		MemoryCacheKey memoryCacheKey;
+		/** Whether ImageView is bound to image of {@link #memoryCacheKey} */
+		boolean bound;
+		/** Key of image which is loading for ImageView (it never changes). Can be null. */
+		MemoryCacheKey loadingKey;
+		/** Key for memory cache lookup of image decoded for cropping. Can be null. */
+		MemoryCacheKey cropKey;
+		/** Displaying which waits for ImageView layout. Can be null. */
+		OnPreDrawListener deferredDisplay;
+		/** Bitmap displayed in ImageView (tracked only if bitmap pool is used). Can be null. */
+		DisplayedBitmapReference displayedBitmap;
+	}
 
-		if (width < 0 && height < 0) {
-			// Get layout width and height parameters
-			LayoutParams params = imageView.getLayoutParams();
-			width = params.width;
-			height = params.height;
+	/** String keys of images cached in memory. The least recently used keys are dropped if there are too many keys. */
+	private static final class MemoryCacheKeyStrings extends LinkedHashMap<MemoryCacheKey, String> {
+		private static final long serialVersionUID = 1L;
+
+		MemoryCacheKeyStrings() {
+			super(16, 0.75f, true); // Access order
 		}
 
-		if (width < 0 && height < 0) {
-			// Get device screen dimensions
-			width = configuration.maxImageWidthForMemoryCache;
-			height = configuration.maxImageHeightForMemoryCache;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<MemoryCacheKey, String> eldest) {
+			return size() > MAX_MEMORY_CACHE_KEY_STRINGS;
+		}
+	}
 
-			// Consider device screen orientation
-			int screenOrientation = imageView.getContext().getResources().getConfiguration().orientation;
-			if ((screenOrientation == Configuration.ORIENTATION_PORTRAIT && width > height)
-					|| (screenOrientation == Configuration.ORIENTATION_LANDSCAPE && width < height)) {
-				int tmp = width;
-				width = height;
-				height = tmp;
-			}
+	/** Weak reference of ImageView which keeps bitmap displayed in it, so the bitmap is released after view collection */
+	private static final class DisplayedBitmapReference extends WeakReference<ImageView> {
+		Bitmap bitmap;
+
+		DisplayedBitmapReference(ImageView imageView, ReferenceQueue<ImageView> queue) {
+			super(imageView, queue);
 		}
-		return new ImageSize(width, height);
 	}
 
-	/** Information about display image task */
+	/** Information about display image task (or about prefetching, then there is no ImageView) */
 	private final class ImageLoadingInfo {
 		private final String url;
 		private final ImageView imageView;
+		private final PrefetchGroup prefetchGroup;
 		private final ImageSize targetSize;
+		private final ViewScaleType scaleType;
 		private final DisplayImageOptions options;
 		private final ImageLoadingListener listener;
-		private final String memoryCacheKey;
+		private final MemoryCacheKey memoryCacheKey;
+		/** Whether preview of image was displayed already (if it's needed by options) */
+		private boolean previewDisplayed = false;
+		/** Whether image is reloaded to replace its bitmap of reduced quality cached in memory */
+		private boolean qualityUpgrade = false;
 
-		public ImageLoadingInfo(String url, ImageView imageView, ImageSize targetSize, DisplayImageOptions options, ImageLoadingListener listener) {
+		public ImageLoadingInfo(String url, ImageView imageView, ImageSize targetSize, MemoryCacheKey memoryCacheKey, DisplayImageOptions options,
+				ImageLoadingListener listener) {
 			this.url = url;
 			this.imageView = imageView;
+			this.prefetchGroup = null;
 			this.targetSize = targetSize;
+			this.scaleType = memoryCacheKey.getScaleType();
 			this.options = options;
 			this.listener = listener;
-			memoryCacheKey = MemoryCacheKeyUtil.generateKey(url, targetSize);
+			this.memoryCacheKey = memoryCacheKey;
 		}
 
-		/** Whether image URL of this task matches to URL which corresponds to current ImageView */
+		public ImageLoadingInfo(String url, PrefetchGroup prefetchGroup, ImageSize targetSize, DisplayImageOptions options) {
+			this.url = url;
+			this.imageView = null;
+			this.prefetchGroup = prefetchGroup;
+			this.targetSize = targetSize;
+			this.scaleType = ViewScaleType.CROP; // Prefetched image should suit any view
+			this.options = options;
+			this.listener = emptyListener;
+			memoryCacheKey = new MemoryCacheKey(url, targetSize, scaleType);
+		}
+
+		/**
+		 * Whether image URL of this task matches to URL which corresponds to current ImageView (or whether prefetching
+		 * wasn't cancelled)
+		 */
 		boolean isConsistent() {
-			String currentCacheKey = cacheKeyForImageView.get(imageView);
+			if (isPrefetch()) {
+				return !prefetchGroup.isCancelled();
+			}
 			// Check whether memory cache key (image URL) for current ImageView is actual.
-			return memoryCacheKey.equals(currentCacheKey);
+			synchronized (imageViewBindings) {
+				ImageViewBinding binding = imageViewBindings.get(imageView);
+				return binding != null && binding.bound && memoryCacheKey.equals(binding.memoryCacheKey);
+			}
+		}
+
+		boolean isPrefetch() {
+			return prefetchGroup != null;
 		}
+
+		/** Whether this request needs decoded bitmap (not only image cached on disc) */
+		boolean isBitmapNeeded() {
+			return !isPrefetch() || prefetchGroup.target == PrefetchTarget.MEMORY;
+		}
+	}
+
+	/** Stage of display image task. Each stage is executed by its own executor. */
+	private enum Stage {
+		/** Image downloading (I/O bound) */
+		NETWORK,
+		/** Reading of image cached on disc (I/O bound) */
+		DISC,
+		/** Image decoding (CPU bound) */
+		DECODING
 	}
 
 	/**
 	 * Presents display image task. Used to load image from Internet or file system, decode it to {@link Bitmap}, and
-	 * display it in {@link ImageView} through {@link DisplayBitmapTask}.
+	 * display it in {@link ImageView} through {@link DisplayBitmapTask}. Several requests of the same image (with the
+	 * same memory cache key) can be attached to one task; loaded bitmap is displayed for all of them.<br />
+	 * Task is executed by {@linkplain Stage stages}: {@link Stage#NETWORK NETWORK} (if image isn't cached on disc),
+	 * {@link Stage#DISC DISC} (if image is cached on disc) and {@link Stage#DECODING DECODING}. When a stage is
+	 * completed the task moves itself into executor of the next stage.
 	 */
 	private class DisplayImageTask implements Runnable {
 
 		private final ImageLoadingInfo imageLoadingInfo;
+		/** All requests which wait for result of this task (including {@link #imageLoadingInfo}) */
+		private final List<ImageLoadingInfo> imageLoadingInfos = new ArrayList<ImageLoadingInfo>();
 
-		public DisplayImageTask(ImageLoadingInfo imageLoadingInfo) {
+		/** Current stage of task. Must not be changed while task is queued. */
+		private Stage stage;
+		/** Executor of current stage */
+		private ThreadPoolExecutor executor;
+		/** Task priority. Must not be changed while task is queued. */
+		private int priority;
+		/** Submission order number. Must not be changed while task is queued. */
+		private long sequence;
+
+		/** Decoder prepared for {@link Stage#DECODING DECODING} stage */
+		private ImageDecoder decoder;
+		/** Decoding options prepared for {@link Stage#DECODING DECODING} stage. Can be null. */
+		private Options decodingOptions;
+		/** Whether image is decoded from disc cache */
+		private boolean decodingFromDiscCache;
+		/** Whether image is decoded from thumbnail disc cache */
+		private boolean decodingFromThumbnail;
+		/** Whether cached thumbnail couldn't be decoded */
+		private boolean thumbnailBroken = false;
+		/** Whether image was reloaded from Internet because cached file was broken */
+		private boolean reloadAttempted = false;
+		/** Whether preview of image was decoded (if it's needed by requests) */
+		private boolean previewDecoded = false;
+		/** Quality which image was decoded with */
+		private ImageQuality decodedQuality = ImageQuality.FULL;
+		/** Time spent for downloading, reading and decoding of image (in ms). It's cost of bitmap for memory cache. */
+		private long loadingTime = 0;
+
+		public DisplayImageTask(ImageLoadingInfo imageLoadingInfo, int priority) {
 			this.imageLoadingInfo = imageLoadingInfo;
+			imageLoadingInfos.add(imageLoadingInfo);
+			this.priority = priority;
+		}
+
+		/** Attaches request of the same image to this task. Must be called under {@link #loadingTasks} lock. */
+		void attach(ImageLoadingInfo imageLoadingInfo) {
+			for (Iterator<ImageLoadingInfo> it = imageLoadingInfos.iterator(); it.hasNext();) {
+				ImageLoadingInfo info = it.next();
+				if (!info.isPrefetch() && info.imageView == imageLoadingInfo.imageView) {
+					it.remove(); // Replace previous request of the same ImageView
+				}
+			}
+			imageLoadingInfos.add(imageLoadingInfo);
+		}
+
+		/**
+		 * Removes requests which aren't actual anymore (so task doesn't keep references to their {@link ImageView
+		 * ImageViews}). Must be called under {@link #loadingTasks} lock.
+		 */
+		void releaseNotActualRequests() {
+			for (Iterator<ImageLoadingInfo> it = imageLoadingInfos.iterator(); it.hasNext();) {
+				if (!it.next().isConsistent()) {
+					it.remove();
+				}
+			}
 		}
 
 		@Override
 		public void run() {
-			if (loggingEnabled) Log.i(TAG, String.format(LOG_START_DISPLAY_IMAGE_TASK, imageLoadingInfo.memoryCacheKey));
-			if (!imageLoadingInfo.isConsistent()) {
+			synchronized (loadingTasks) {
+				removeDroppableTask(this);
+			}
+			if (loggingEnabled) Log.i(TAG, String.format(LOG_START_DISPLAY_IMAGE_TASK, imageLoadingInfo.memoryCacheKey, stage));
+			if (waitIfPaused() || detachIfNotActual()) {
 				return;
 			}
 
-			Bitmap bmp = loadBitmap();
-			if (bmp == null) {
+			try {
+				switch (stage) {
+					case NETWORK:
+						runNetworkStage();
+						break;
+					case DISC:
+						runDiscStage();
+						break;
+					case DECODING:
+						runDecodingStage();
+						break;
+				}
+			} catch (IOException e) {
+				Log.e(TAG, e.getMessage(), e);
+				fireImageLoadingFailedEvent();
+			} catch (Throwable e) {
+				Log.e(TAG, e.getMessage(), e);
+				fireImageLoadingFailedEvent();
+			}
+		}
+
+		/** Downloads image (into disc cache if it's needed) */
+		private void runNetworkStage() throws IOException {
+			UrlLock urlLock = lockUrl(imageLoadingInfo.url);
+			try {
+				// Image could be loaded by another task while this task was waiting for the lock
+				// (cached bitmap of reduced quality is ignored if task is upgrading it)
+				if (!imageLoadingInfo.qualityUpgrade) {
+					Bitmap bmp = getCachedBitmap(imageLoadingInfo.memoryCacheKey.toString());
+					if (bmp != null) {
+						displayBitmap(bmp);
+						releaseCachedBitmap(bmp);
+						return;
+					}
+				}
+
+				File f = configuration.discCache.get(imageLoadingInfo.url);
+				if (!f.exists()) {
+					if (loggingEnabled) Log.i(TAG, String.format(LOG_LOAD_IMAGE_FROM_INTERNET, imageLoadingInfo.memoryCacheKey));
+					if (imageLoadingInfo.options.isCacheOnDisc() || !isBitmapNeeded()) {
+						if (loggingEnabled) Log.i(TAG, String.format(LOG_CACHE_IMAGE_ON_DISC, imageLoadingInfo.memoryCacheKey));
+						if (!saveImageOnDisc(f)) {
+							if (loggingEnabled) Log.i(TAG, String.format(LOG_CANCEL_DOWNLOADING, imageLoadingInfo.memoryCacheKey));
+							detach();
+							return;
+						}
+						configuration.discCache.put(imageLoadingInfo.url, f);
+					} else {
+						ByteArrayOutputStream imageData = new ByteArrayOutputStream();
+						if (!downloadImage(imageData)) {
+							if (loggingEnabled) Log.i(TAG, String.format(LOG_CANCEL_DOWNLOADING, imageLoadingInfo.memoryCacheKey));
+							detach();
+							return;
+						}
+						decoder = new ImageDecoder(imageData.toByteArray(), imageLoadingInfo.targetSize, imageLoadingInfo.scaleType, imageLoadingInfo.options);
+						decoder.setBitmapPool(configuration.bitmapPool);
+						decodingFromDiscCache = false;
+						decodingFromThumbnail = false;
+						moveToStage(Stage.DECODING);
+						return;
+					}
+				}
+			} finally {
+				unlockUrl(imageLoadingInfo.url, urlLock);
+			}
+			moveToStage(Stage.DISC);
+		}
+
+		/**
+		 * Finds image (or its thumbnail) cached on disc and prepares its decoder. Image is opened and its bounds are
+		 * read in decoding stage, so tasks waiting for decoding don't hold open files.
+		 */
+		private void runDiscStage() throws IOException {
+			if (isBitmapNeeded() && isThumbnailCachedOnDisc()) {
+				if (loggingEnabled) Log.i(TAG, String.format(LOG_LOAD_IMAGE_FROM_THUMBNAIL_CACHE, imageLoadingInfo.memoryCacheKey));
+				if (configuration.thumbnailDiscCache instanceof RawBitmapDiscCache) {
+					// Raw pixels are copied into bitmap without decoding
+					long startTime = System.currentTimeMillis();
+					Bitmap bmp = loadRawThumbnail();
+					loadingTime += System.currentTimeMillis() - startTime;
+					if (bmp != null) {
+						cacheAndDisplayBitmap(bmp, ImageQuality.FULL);
+						return;
+					}
+					deleteBrokenThumbnail();
+				} else {
+					File thumbnailFile = configuration.thumbnailDiscCache.get(getThumbnailKey());
+					decoder = new ImageDecoder(thumbnailFile.toURL(), imageLoadingInfo.targetSize, imageLoadingInfo.scaleType, imageLoadingInfo.options);
+					decoder.setBitmapPool(configuration.bitmapPool);
+					decodingFromDiscCache = true;
+					decodingFromThumbnail = true;
+					moveToStage(Stage.DECODING);
+					return;
+				}
+			}
+
+			File f = configuration.discCache.get(imageLoadingInfo.url);
+			if (!f.exists()) {
+				// Image was removed from disc cache after task was created
+				moveToStage(Stage.NETWORK);
 				return;
 			}
-			if (!imageLoadingInfo.isConsistent()) {
+			if (!isBitmapNeeded()) {
+				detach(); // Image is prefetched on disc already
 				return;
 			}
 
-			if (imageLoadingInfo.options.isCacheInMemory()) {
-				if (loggingEnabled) Log.i(TAG, String.format(LOG_CACHE_IMAGE_IN_MEMORY, imageLoadingInfo.memoryCacheKey));
-				configuration.memoryCache.put(imageLoadingInfo.memoryCacheKey, bmp);
+			if (loggingEnabled) Log.i(TAG, String.format(LOG_LOAD_IMAGE_FROM_DISC_CACHE, imageLoadingInfo.memoryCacheKey));
+			decoder = new ImageDecoder(f.toURL(), imageLoadingInfo.targetSize, imageLoadingInfo.scaleType, imageLoadingInfo.options);
+			decoder.setBitmapPool(configuration.bitmapPool);
+			decodingFromDiscCache = true;
+			decodingFromThumbnail = false;
+			moveToStage(Stage.DECODING);
+		}
+
+		/** Decodes image, caches it in memory (if it's needed) and displays it */
+		private void runDecodingStage() throws IOException {
+			if (!isBitmapNeeded()) {
+				detach();
+				return;
+			}
+			if (!previewDecoded && !decodingFromThumbnail && !getPreviewRequests().isEmpty()) {
+				previewDecoded = true;
+				Bitmap preview = decodePreview();
+				if (preview != null) {
+					displayPreview(preview);
+				}
+				// Full image is decoded after previews of other queued images
+				if (priority > PREFETCH_TASK_PRIORITY + 1) {
+					priority--;
+				}
+				moveToStage(Stage.DECODING);
+				return;
 			}
 
-			DisplayBitmapTask displayBitmapTask = new DisplayBitmapTask(imageLoadingInfo, bmp);
-			tryRunOnUiThread(displayBitmapTask);
+			Bitmap bmp;
+			boolean downsampled;
+			try {
+				bmp = decodeImage();
+				downsampled = decodingOptions.inSampleSize > 1;
+			} finally {
+				decoder.close();
+				decoder = null;
+				decodingOptions = null;
+			}
+			if (bmp == null) {
+				if (decodingFromThumbnail) {
+					deleteBrokenThumbnail();
+					moveToStage(Stage.DISC);
+				} else if (decodingFromDiscCache && !reloadAttempted) {
+					if (loggingEnabled) Log.i(TAG, String.format(LOG_RELOAD_BROKEN_CACHED_IMAGE, imageLoadingInfo.memoryCacheKey));
+					reloadAttempted = true;
+					configuration.discCache.get(imageLoadingInfo.url).delete();
+					moveToStage(Stage.NETWORK);
+				} else {
+					fireImageLoadingFailedEvent();
+				}
+				return;
+			}
+			boolean fullQuality = decodedQuality == ImageQuality.FULL;
+			boolean saveThumbnail = downsampled && fullQuality && !decodingFromThumbnail && configuration.thumbnailDiscCache != null;
+			BitmapPool bitmapPool = configuration.bitmapPool;
+			if (saveThumbnail && bitmapPool != null) {
+				bitmapPool.retain(bmp); // Bitmap can't be reused until it's saved
+			}
+			cacheAndDisplayBitmap(bmp, decodedQuality);
+			// Thumbnail is saved after displaying so saving doesn't delay first display of image
+			if (saveThumbnail) {
+				saveThumbnailOnDisc(bmp);
+				if (bitmapPool != null) {
+					bitmapPool.release(bmp);
+				}
+			}
 		}
 
-		private Bitmap loadBitmap() {
-			File f = configuration.discCache.get(imageLoadingInfo.url);
+		/** Caches bitmap in memory (if it's needed) and displays it */
+		private void cacheAndDisplayBitmap(Bitmap bmp, ImageQuality quality) {
+			// Pooled bitmap can be reused for this image, so its previous quality is overwritten
+			if (quality == ImageQuality.FULL) {
+				reducedQualityBitmaps.remove(bmp);
+			} else {
+				reducedQualityBitmaps.put(bmp, quality);
+			}
+			if (detachIfNotActual()) {
+				return;
+			}
+			BitmapPool bitmapPool = configuration.bitmapPool;
+			if (bitmapPool != null) {
+				bitmapPool.retain(bmp); // Cached bitmap can be evicted before it's displayed
+			}
+			if (imageLoadingInfo.options.isCacheInMemory() || isMemoryPrefetchRequested()) {
+				if (loggingEnabled) Log.i(TAG, String.format(LOG_CACHE_IMAGE_IN_MEMORY, imageLoadingInfo.memoryCacheKey));
+				String memoryCacheKey = imageLoadingInfo.memoryCacheKey.toString();
+				if (imageLoadingInfo.qualityUpgrade) {
+					configuration.memoryCache.remove(memoryCacheKey); // Replace bitmap of reduced quality
+				}
+				MemoryCacheAware<String, Bitmap> memoryCache = configuration.memoryCache;
+				if (memoryCache instanceof CostAwareMemoryCache) {
+					int cost = (int) Math.max(loadingTime, 1);
+					((CostAwareMemoryCache<String, Bitmap>) memoryCache).put(memoryCacheKey, bmp, cost);
+				} else {
+					memoryCache.put(memoryCacheKey, bmp);
+				}
+				synchronized (memoryCacheKeyStrings) {
+					memoryCacheKeyStrings.put(imageLoadingInfo.memoryCacheKey, memoryCacheKey); // Key of task is never changed
+				}
+			}
+			displayBitmap(bmp);
+			if (bitmapPool != null) {
+				bitmapPool.release(bmp);
+			}
+		}
+
+		/** Moves task to executor of passed stage */
+		private void moveToStage(Stage nextStage) {
+			synchronized (loadingTasks) {
+				stage = nextStage;
+				switch (nextStage) {
+					case NETWORK:
+						executor = networkExecutor;
+						break;
+					case DISC:
+						executor = discExecutor;
+						break;
+					case DECODING:
+						executor = decodingExecutor;
+						break;
+				}
+				try {
+					enqueue(this);
+				} catch (RejectedExecutionException e) {
+					detach(); // ImageLoader was stopped
+				}
+			}
+		}
 
-			Bitmap bitmap = null;
+		/** Decodes heavily downsampled image. Returns <b>null</b> if image can't be decoded. */
+		private Bitmap decodePreview() throws IOException {
+			if (loggingEnabled) Log.i(TAG, String.format(LOG_DECODE_PREVIEW, imageLoadingInfo.memoryCacheKey));
+			if (decodingOptions == null) {
+				decodingOptions = decoder.prepareDecodingOptions();
+			}
+			Options previewOptions = new Options();
+			previewOptions.inSampleSize = decodingOptions.inSampleSize * PREVIEW_SAMPLE_SIZE_FACTOR;
+			previewOptions.inPreferredConfig = decodingOptions.inPreferredConfig;
+			previewOptions.inDither = decodingOptions.inDither;
 			try {
-				// Try to load image from disc cache
-				if (f.exists()) {
-					if (loggingEnabled) Log.i(TAG, String.format(LOG_LOAD_IMAGE_FROM_DISC_CACHE, imageLoadingInfo.memoryCacheKey));
-					Bitmap b = decodeImage(f.toURL());
-					if (b != null) {
-						return b;
+				return decoder.decode(previewOptions);
+			} catch (OutOfMemoryError e) {
+				Log.e(TAG, e.getMessage(), e);
+				return null;
+			}
+		}
+
+		/** Displays preview in {@link ImageView ImageViews} which need it. Task stays attached. */
+		private void displayPreview(Bitmap preview) {
+			for (ImageLoadingInfo info : getPreviewRequests()) {
+				info.previewDisplayed = true;
+				DisplayBitmapTask displayBitmapTask = new DisplayBitmapTask(info, preview, true);
+				if (!tryRunOnUiThread(info, displayBitmapTask)) {
+					displayBitmapTask.releaseBitmap();
+				}
+			}
+		}
+
+		/** Returns actual requests which need preview of image which wasn't displayed yet */
+		private List<ImageLoadingInfo> getPreviewRequests() {
+			List<ImageLoadingInfo> previewRequests = new ArrayList<ImageLoadingInfo>();
+			synchronized (loadingTasks) {
+				for (ImageLoadingInfo info : imageLoadingInfos) {
+					if (!info.isPrefetch() && info.options.isDisplayPreviewFirst() && !info.previewDisplayed && info.isConsistent()) {
+						previewRequests.add(info);
 					}
 				}
+			}
+			return previewRequests;
+		}
 
-				// Load image from Web
-				if (loggingEnabled) Log.i(TAG, String.format(LOG_LOAD_IMAGE_FROM_INTERNET, imageLoadingInfo.memoryCacheKey));
-				URL imageUrlForDecoding;
-				if (imageLoadingInfo.options.isCacheOnDisc()) {
-					if (loggingEnabled) Log.i(TAG, String.format(LOG_CACHE_IMAGE_ON_DISC, imageLoadingInfo.memoryCacheKey));
-					saveImageOnDisc(f);
-					configuration.discCache.put(imageLoadingInfo.url, f);
-					imageUrlForDecoding = f.toURL();
-				} else {
-					imageUrlForDecoding = new URL(imageLoadingInfo.url);
+		/** Displays bitmap in all {@link ImageView ImageViews} which wait for it */
+		private void displayBitmap(Bitmap bmp) {
+			for (ImageLoadingInfo info : detach()) {
+				if (info.isPrefetch()) continue;
+				DisplayBitmapTask displayBitmapTask = new DisplayBitmapTask(info, bmp, false);
+				if (!tryRunOnUiThread(info, displayBitmapTask)) {
+					displayBitmapTask.releaseBitmap();
 				}
+			}
+		}
 
-				bitmap = decodeImage(imageUrlForDecoding);
-			} catch (IOException e) {
-				Log.e(TAG, e.getMessage(), e);
-				fireImageLoadingFailedEvent();
-				if (f.exists()) {
-					f.delete();
+		/**
+		 * Removes this task from {@link #loadingTasks}, so new requests of the image won't be attached to it. Releases
+		 * image stream which was opened for decoding.
+		 * 
+		 * @return All requests attached to this task
+		 */
+		private List<ImageLoadingInfo> detach() {
+			synchronized (loadingTasks) {
+				if (decoder != null) {
+					decoder.close();
+					decoder = null;
 				}
-			} catch (Throwable e) {
-				Log.e(TAG, e.getMessage(), e);
-				fireImageLoadingFailedEvent();
+				if (loadingTasks.get(imageLoadingInfo.memoryCacheKey) == this) {
+					loadingTasks.remove(imageLoadingInfo.memoryCacheKey);
+				}
+				return new ArrayList<ImageLoadingInfo>(imageLoadingInfos);
+			}
+		}
+
+		/** Detaches this task if none of its requests is actual anymore. Returns <b>true</b> if task was detached. */
+		private boolean detachIfNotActual() {
+			synchronized (loadingTasks) {
+				if (isActual()) {
+					return false;
+				}
+				detach();
+				return true;
+			}
+		}
+
+		/**
+		 * Blocks current thread while ImageLoader is {@linkplain ImageLoader#pause() paused}
+		 * 
+		 * @return <b>true</b> - if thread was interrupted during waiting (task should be finished)
+		 */
+		private boolean waitIfPaused() {
+			synchronized (pauseLock) {
+				if (paused) {
+					if (loggingEnabled) Log.i(TAG, String.format(LOG_WAITING_FOR_RESUME, imageLoadingInfo.memoryCacheKey));
+					while (paused) {
+						try {
+							pauseLock.wait();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt(); // Let executor know that thread was interrupted
+							detach();
+							return true;
+						}
+					}
+					if (loggingEnabled) Log.i(TAG, String.format(LOG_RESUME_AFTER_PAUSE, imageLoadingInfo.memoryCacheKey));
+				}
+			}
+			return false;
+		}
+
+		/** Whether any actual request of this task needs decoded bitmap */
+		private boolean isBitmapNeeded() {
+			synchronized (loadingTasks) {
+				for (ImageLoadingInfo info : imageLoadingInfos) {
+					if (info.isBitmapNeeded() && info.isConsistent()) {
+						return true;
+					}
+				}
+				return false;
+			}
+		}
+
+		/** Whether image of this task is prefetched (into memory cache or on disc) */
+		private boolean isPrefetchRequested() {
+			synchronized (loadingTasks) {
+				for (ImageLoadingInfo info : imageLoadingInfos) {
+					if (info.isPrefetch()) {
+						return true;
+					}
+				}
+				return false;
+			}
+		}
+
+		/** Whether image of this task is prefetched into memory cache */
+		private boolean isMemoryPrefetchRequested() {
+			synchronized (loadingTasks) {
+				for (ImageLoadingInfo info : imageLoadingInfos) {
+					if (info.isPrefetch() && info.isBitmapNeeded()) {
+						return true;
+					}
+				}
+				return false;
+			}
+		}
+
+		/** Whether any {@link ImageView} (or prefetching) still waits for image of this task */
+		private boolean isActual() {
+			synchronized (loadingTasks) {
+				for (ImageLoadingInfo info : imageLoadingInfos) {
+					if (info.isConsistent()) {
+						return true;
+					}
+				}
+				return false;
 			}
-			return bitmap;
 		}
 
 		private boolean isImageCachedOnDisc() {
 			File f = configuration.discCache.get(imageLoadingInfo.url);
-			return f.exists();
+			return f.exists() || isThumbnailCachedOnDisc();
 		}
 
-		private Bitmap decodeImage(URL imageUrl) throws IOException {
-			Bitmap bmp = null;
-			ImageDecoder decoder = new ImageDecoder(imageUrl, imageLoadingInfo.targetSize, imageLoadingInfo.options.getDecodingType());
-			
-			for (int attempt = 1; attempt <= ATTEMPT_COUNT_TO_DECODE_BITMAP; attempt++) {
+		/**
+		 * Loads thumbnail from {@link RawBitmapDiscCache} when loading is admitted by {@linkplain MemoryGovernor memory
+		 * governor} (like decoding). Returns <b>null</b> if thumbnail can't be loaded.
+		 */
+		private Bitmap loadRawThumbnail() throws InterruptedIOException {
+			RawBitmapDiscCache thumbnailDiscCache = (RawBitmapDiscCache) configuration.thumbnailDiscCache;
+			String thumbnailKey = getThumbnailKey();
+			int bitmapSize = thumbnailDiscCache.getBitmapSize(thumbnailKey);
+			try {
+				configuration.memoryGovernor.acquire(bitmapSize);
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException(e.getMessage());
+			}
+			try {
 				try {
-					bmp = decoder.decodeFile();
-					break;
+					return thumbnailDiscCache.load(thumbnailKey, configuration.bitmapPool);
 				} catch (OutOfMemoryError e) {
 					Log.e(TAG, e.getMessage(), e);
-					
-					switch (attempt) {
-						case 1:
-							System.gc();
-							break;
-						case 2:
-							configuration.memoryCache.clear();
-							System.gc();
-							break;
-						case 3:
-							throw e;
-					}
-					// Wait some time while GC is working
-					try {
-						Thread.sleep(attempt * 1000);
-					} catch (InterruptedException ie) {
-						Log.e(TAG, ie.getMessage(), ie);
-					}
+					if (loggingEnabled) Log.i(TAG, String.format(LOG_RETRY_DECODING_AFTER_OOM, imageLoadingInfo.memoryCacheKey));
+					configuration.memoryGovernor.onOutOfMemory(bitmapSize);
+					return thumbnailDiscCache.load(thumbnailKey, configuration.bitmapPool);
+				}
+			} catch (IOException e) {
+				Log.e(TAG, e.getMessage(), e);
+				return null;
+			} finally {
+				configuration.memoryGovernor.release(bitmapSize);
+			}
+		}
+
+		/** Deletes thumbnail which can't be decoded, so image will be decoded from original */
+		private void deleteBrokenThumbnail() {
+			if (loggingEnabled) Log.i(TAG, String.format(LOG_DELETE_BROKEN_THUMBNAIL, imageLoadingInfo.memoryCacheKey));
+			thumbnailBroken = true;
+			configuration.thumbnailDiscCache.get(getThumbnailKey()).delete();
+		}
+
+		/** Returns key of image thumbnail in thumbnail disc cache */
+		private String getThumbnailKey() {
+			return imageLoadingInfo.memoryCacheKey.toString();
+		}
+
+		private boolean isThumbnailCachedOnDisc() {
+			if (configuration.thumbnailDiscCache == null || thumbnailBroken) {
+				return false;
+			}
+			DiscCacheAware thumbnailDiscCache = configuration.thumbnailDiscCache;
+			if (thumbnailDiscCache instanceof BaseDiscCache) {
+				// Limited cache marks file as used on every get() even if file doesn't exist
+				return ((BaseDiscCache) thumbnailDiscCache).contains(getThumbnailKey());
+			}
+			return thumbnailDiscCache.get(getThumbnailKey()).exists();
+		}
+
+		/**
+		 * Saves decoded image of reduced size on disc (in thumbnail disc cache), so next time it will be decoded from
+		 * the thumbnail instead of original image
+		 */
+		private void saveThumbnailOnDisc(Bitmap bmp) {
+			if (loggingEnabled) Log.i(TAG, String.format(LOG_CACHE_THUMBNAIL_ON_DISC, imageLoadingInfo.memoryCacheKey));
+			if (configuration.thumbnailDiscCache instanceof RawBitmapDiscCache) {
+				try {
+					((RawBitmapDiscCache) configuration.thumbnailDiscCache).save(getThumbnailKey(), bmp);
+				} catch (IOException e) {
+					Log.e(TAG, e.getMessage(), e);
+				}
+				return;
+			}
+
+			File thumbnailFile = configuration.thumbnailDiscCache.get(getThumbnailKey());
+			File tempFile = new File(thumbnailFile.getPath() + TEMP_FILE_POSTFIX);
+			CompressFormat format = bmp.hasAlpha() ? CompressFormat.PNG : CompressFormat.JPEG;
+			boolean saved = false;
+			try {
+				OutputStream os = new BufferedOutputStream(new FileOutputStream(tempFile));
+				try {
+					saved = bmp.compress(format, THUMBNAIL_COMPRESS_QUALITY, os);
+				} finally {
+					os.close();
+				}
+				saved = saved && tempFile.renameTo(thumbnailFile);
+			} catch (IOException e) {
+				Log.e(TAG, e.getMessage(), e);
+			} finally {
+				if (!saved) {
+					tempFile.delete();
+				}
+			}
+			if (saved) {
+				configuration.thumbnailDiscCache.put(getThumbnailKey(), thumbnailFile);
+			}
+		}
+
+		/**
+		 * Decodes image when decoding is admitted by {@linkplain MemoryGovernor memory governor}. If there is not
+		 * enough memory for decoding then memory cache is trimmed for decoded bitmap and decoding is repeated once.<br />
+		 * If bitmap doesn't fit free heap memory then image is decoded with {@linkplain ImageQuality reduced quality}
+		 * (see {@link #decodedQuality}).
+		 */
+		private Bitmap decodeImage() throws IOException {
+			if (decodingOptions == null) {
+				decodingOptions = decoder.prepareDecodingOptions();
+			}
+
+			int bitmapSize = decoder.estimateBitmapSize(decodingOptions);
+			decodedQuality = ImageQuality.FULL;
+			while (decodedQuality != ImageQuality.REDUCED_SIZE_AND_COLORS && !configuration.memoryGovernor.fitsHeapHeadroom(bitmapSize)) {
+				decodedQuality = decoder.reduceQuality(decodingOptions, decodedQuality);
+				bitmapSize = decoder.estimateBitmapSize(decodingOptions);
+			}
+			if (decodedQuality != ImageQuality.FULL && loggingEnabled) {
+				Log.i(TAG, String.format(LOG_REDUCE_QUALITY, decodedQuality, imageLoadingInfo.memoryCacheKey));
+			}
+
+			try {
+				configuration.memoryGovernor.acquire(bitmapSize);
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException(e.getMessage());
+			}
+			long startTime = System.currentTimeMillis();
+			try {
+				return decoder.decode(decodingOptions);
+			} catch (OutOfMemoryError e) {
+				Log.e(TAG, e.getMessage(), e);
+				if (loggingEnabled) Log.i(TAG, String.format(LOG_RETRY_DECODING_AFTER_OOM, imageLoadingInfo.memoryCacheKey));
+				configuration.memoryGovernor.onOutOfMemory(bitmapSize);
+				return decoder.decode(decodingOptions);
+			} finally {
+				loadingTime += System.currentTimeMillis() - startTime;
+				configuration.memoryGovernor.release(bitmapSize);
+			}
+		}
+
+		/**
+		 * Downloads image into file. Image is downloaded into temporary file which is renamed to target file when
+		 * downloading is completed, so target file never contains partially downloaded image.
+		 * 
+		 * @return <b>true</b> - if image was saved; <b>false</b> - if downloading was cancelled (partially downloaded
+		 *         file is deleted)
+		 * @see #downloadImage(OutputStream)
+		 */
+		private boolean saveImageOnDisc(File targetFile) throws MalformedURLException, IOException {
+			File tempFile = new File(targetFile.getPath() + TEMP_FILE_POSTFIX);
+			boolean saved = false;
+			try {
+				OutputStream os = new FileOutputStream(tempFile);
+				try {
+					saved = downloadImage(os);
+				} finally {
+					os.close();
+				}
+				if (saved && !tempFile.renameTo(targetFile)) {
+					saved = false;
+					throw new IOException(String.format(ERROR_CANT_RENAME_FILE, tempFile));
+				}
+			} finally {
+				if (!saved) {
+					tempFile.delete();
 				}
 			}
-			
-			decoder = null;
-			return bmp;
+			return saved;
 		}
 
-		private void saveImageOnDisc(File targetFile) throws MalformedURLException, IOException {
+		/**
+		 * Downloads image into output stream. Downloading is cancelled if the image isn't needed by any
+		 * {@link ImageView} anymore, unless its downloaded part has already reached
+		 * {@linkplain ImageLoaderConfiguration.Builder#cancelledDownloadCompletionThreshold(int) threshold}.
+		 * 
+		 * @return <b>true</b> - if image was downloaded; <b>false</b> - if downloading was cancelled
+		 */
+		private boolean downloadImage(OutputStream os) throws MalformedURLException, IOException {
+			long startTime = System.currentTimeMillis();
 			URLConnection conn = new URL(imageLoadingInfo.url).openConnection();
 			conn.setConnectTimeout(configuration.httpConnectTimeout);
 			conn.setReadTimeout(configuration.httpReadTimeout);
-			BufferedInputStream is = new BufferedInputStream(conn.getInputStream());
 			try {
-				OutputStream os = new FileOutputStream(targetFile);
+				BufferedInputStream is = new BufferedInputStream(conn.getInputStream());
 				try {
-					FileUtils.copyStream(is, os);
+					return FileUtils.copyStream(is, os, conn.getContentLength(), new FileUtils.CopyListener() {
+						@Override
+						public boolean onBytesCopied(int current, int total) {
+							return isActual() || isDownloadAlmostCompleted(current, total);
+						}
+					});
 				} finally {
-					os.close();
+					is.close();
 				}
 			} finally {
-				is.close();
+				if (conn instanceof HttpURLConnection) {
+					((HttpURLConnection) conn).disconnect();
+				}
+				loadingTime += System.currentTimeMillis() - startTime;
 			}
 		}
 
+		private boolean isDownloadAlmostCompleted(int current, int total) {
+			return total > 0 && current * 100L >= total * (long) configuration.cancelledDownloadCompletionThreshold;
+		}
+
 		private void fireImageLoadingFailedEvent() {
-			tryRunOnUiThread(new Runnable() {
-				@Override
-				public void run() {
-					imageLoadingInfo.listener.onLoadingFailed();
-				}
-			});
+			for (final ImageLoadingInfo info : detach()) {
+				if (info.isPrefetch()) continue;
+				tryRunOnUiThread(info, new Runnable() {
+					@Override
+					public void run() {
+						info.listener.onLoadingFailed();
+					}
+				});
+			}
 		}
 
-		private void tryRunOnUiThread(Runnable runnable) {
-			Context context = imageLoadingInfo.imageView.getContext();
+		/** Returns <b>false</b> if runnable can't be run (listener is notified about failure then) */
+		private boolean tryRunOnUiThread(ImageLoadingInfo info, Runnable runnable) {
+			Context context = info.imageView.getContext();
 			if (context instanceof Activity) {
 				((Activity) context).runOnUiThread(runnable);
+				return true;
 			} else {
 				Log.e(TAG, ERROR_IMAGEVIEW_CONTEXT);
-				imageLoadingInfo.listener.onLoadingFailed();
+				info.listener.onLoadingFailed();
+				return false;
 			}
 		}
 	}
 
-	/** Used to display bitmap in {@link ImageView}. Must be called on UI thread. */
+	/**
+	 * Used to display bitmap (or preview of image) in {@link ImageView}. Must be called on UI thread. Listener isn't
+	 * notified about preview displaying.<br />
+	 * Bitmap is retained in bitmap pool (if it's used) since task creation, so it isn't reused for other image before
+	 * it's displayed.
+	 */
 	private class DisplayBitmapTask implements Runnable {
 		private final Bitmap bitmap;
 		private final ImageLoadingInfo imageLoadingInfo;
+		private final boolean preview;
 
-		public DisplayBitmapTask(ImageLoadingInfo imageLoadingInfo, Bitmap bitmap) {
+		public DisplayBitmapTask(ImageLoadingInfo imageLoadingInfo, Bitmap bitmap, boolean preview) {
 			this.bitmap = bitmap;
 			this.imageLoadingInfo = imageLoadingInfo;
+			this.preview = preview;
+			if (configuration.bitmapPool != null) {
+				configuration.bitmapPool.retain(bitmap);
+			}
 		}
 
 		public void run() {
+			try {
+				display();
+			} finally {
+				releaseBitmap(); // Bitmap is retained by ImageView now (if it was displayed)
+			}
+		}
+
+		/** Releases bitmap if task won't be run */
+		void releaseBitmap() {
+			if (configuration.bitmapPool != null) {
+				configuration.bitmapPool.release(bitmap);
+			}
+		}
+
+		private void display() {
 			if (imageLoadingInfo.isConsistent()) {
-				if (loggingEnabled) Log.i(TAG, String.format(LOG_DISPLAY_IMAGE_IN_IMAGEVIEW, imageLoadingInfo.memoryCacheKey));
-				imageLoadingInfo.imageView.setImageBitmap(bitmap);
-				imageLoadingInfo.listener.onLoadingComplete();
+				if (preview) {
+					if (loggingEnabled) Log.i(TAG, String.format(LOG_DISPLAY_PREVIEW_IN_IMAGEVIEW, imageLoadingInfo.memoryCacheKey));
+					setImageBitmap(imageLoadingInfo.imageView, bitmap);
+				} else {
+					if (loggingEnabled) Log.i(TAG, String.format(LOG_DISPLAY_IMAGE_IN_IMAGEVIEW, imageLoadingInfo.memoryCacheKey));
+					setImageBitmap(imageLoadingInfo.imageView, bitmap);
+					setTileSource(imageLoadingInfo.imageView, imageLoadingInfo.url);
+					imageLoadingInfo.listener.onLoadingComplete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Orders queued {@link DisplayImageTask display image tasks}: task with greater priority goes first, tasks with
+	 * equal priority are ordered according to {@link QueueProcessingType queue processing type}.
+	 */
+	private static class TaskComparator implements Comparator<Runnable> {
+
+		private final QueueProcessingType processingType;
+
+		public TaskComparator(QueueProcessingType processingType) {
+			this.processingType = processingType;
+		}
+
+		@Override
+		public int compare(Runnable r1, Runnable r2) {
+			DisplayImageTask task1 = (DisplayImageTask) r1;
+			DisplayImageTask task2 = (DisplayImageTask) r2;
+			if (task1.priority != task2.priority) {
+				return task1.priority > task2.priority ? -1 : 1;
+			}
+			if (task1.sequence == task2.sequence) {
+				return 0;
+			}
+			boolean firstIsEarlier = task1.sequence < task2.sequence;
+			if (processingType == QueueProcessingType.FIFO) {
+				return firstIsEarlier ? -1 : 1;
+			} else {
+				return firstIsEarlier ? 1 : -1;
 			}
 		}
 	}
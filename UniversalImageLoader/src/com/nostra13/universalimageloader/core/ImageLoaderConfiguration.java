@@ -11,9 +11,11 @@ import com.nostra13.universalimageloader.cache.disc.DiscCacheAware;
 import com.nostra13.universalimageloader.cache.disc.impl.FileCountLimitedDiscCache;
 import com.nostra13.universalimageloader.cache.disc.impl.TotalSizeLimitedDiscCache;
 import com.nostra13.universalimageloader.cache.disc.impl.UnlimitedDiscCache;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
 import com.nostra13.universalimageloader.cache.memory.FuzzyKeyMemoryCache;
+import com.nostra13.universalimageloader.cache.memory.LimitedMemoryCacheAware;
 import com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
-import com.nostra13.universalimageloader.cache.memory.impl.UsingFreqLimitedMemoryCache;
+import com.nostra13.universalimageloader.cache.memory.impl.ConcurrentLimitedMemoryCache;
 import com.nostra13.universalimageloader.utils.StorageUtils;
 
 /**
@@ -27,24 +29,42 @@ import com.nostra13.universalimageloader.utils.StorageUtils;
  */
 public final class ImageLoaderConfiguration {
 
+	final Context context;
 	final int maxImageWidthForMemoryCache;
 	final int maxImageHeightForMemoryCache;
 	final int httpConnectTimeout;
 	final int httpReadTimeout;
+	final int cancelledDownloadCompletionThreshold;
 	final int threadPoolSize;
+	final int discThreadPoolSize;
+	final int decodingThreadPoolSize;
+	final QueueProcessingType tasksProcessingType;
+	final int taskQueueSize;
 	final MemoryCacheAware<String, Bitmap> memoryCache;
+	final BitmapPool bitmapPool;
+	final MemoryGovernor memoryGovernor;
 	final DiscCacheAware discCache;
+	final DiscCacheAware thumbnailDiscCache;
 	final DisplayImageOptions defaultDisplayImageOptions;
 	final ThreadFactory displayImageThreadFactory;
 
 	private ImageLoaderConfiguration(final Builder builder) {
+		context = builder.context.getApplicationContext();
 		maxImageWidthForMemoryCache = builder.maxImageWidthForMemoryCache;
 		maxImageHeightForMemoryCache = builder.maxImageHeightForMemoryCache;
 		httpConnectTimeout = builder.httpConnectTimeout;
 		httpReadTimeout = builder.httpReadTimeout;
+		cancelledDownloadCompletionThreshold = builder.cancelledDownloadCompletionThreshold;
 		threadPoolSize = builder.threadPoolSize;
+		discThreadPoolSize = builder.discThreadPoolSize;
+		decodingThreadPoolSize = builder.decodingThreadPoolSize;
+		tasksProcessingType = builder.tasksProcessingType;
+		taskQueueSize = builder.taskQueueSize;
 		discCache = builder.discCache;
+		thumbnailDiscCache = builder.thumbnailDiscCache;
 		memoryCache = builder.memoryCache;
+		bitmapPool = builder.bitmapPool;
+		memoryGovernor = builder.memoryGovernor;
 		defaultDisplayImageOptions = builder.defaultDisplayImageOptions;
 		displayImageThreadFactory = new ThreadFactory() {
 			@Override
@@ -64,12 +84,24 @@ public final class ImageLoaderConfiguration {
 	 * <li>maxImageHeightForMemoryCache = {@link Builder#DEFAULT_MAX_IMAGE_HEIGHT this}</li>
 	 * <li>httpConnectTimeout = {@link Builder#DEFAULT_HTTP_CONNECTION_TIMEOUT this}</li>
 	 * <li>httpReadTimeout = {@link Builder#DEFAULT_HTTP_READ_TIMEOUT this}</li>
+	 * <li>cancelledDownloadCompletionThreshold = {@link Builder#DEFAULT_CANCELLED_DOWNLOAD_COMPLETION_THRESHOLD this}
+	 * </li>
 	 * <li>threadPoolSize = {@link Builder#DEFAULT_THREAD_POOL_SIZE this}</li>
+	 * <li>discThreadPoolSize = {@link Builder#DEFAULT_DISC_THREAD_POOL_SIZE this}</li>
+	 * <li>decodingThreadPoolSize = count of available processors</li>
 	 * <li>threadPriority = {@link Builder#DEFAULT_THREAD_PRIORITY this}</li>
+	 * <li>tasksProcessingOrder = {@link Builder#DEFAULT_TASK_PROCESSING_TYPE this}</li>
+	 * <li>taskQueueSize = {@link Builder#DEFAULT_TASK_QUEUE_SIZE this}</li>
 	 * <li>allow to cache different sizes of image in memory</li>
-	 * <li>memoryCache = {@link com.nostra13.universalimageloader.cache.memory.impl.UsingFreqLimitedMemoryCache
-	 * UsingFreqLimitedCache} with limited memory cache size ( {@link Builder#DEFAULT_MEMORY_CACHE_SIZE this} bytes)</li>
+	 * <li>memoryCache = {@link com.nostra13.universalimageloader.cache.memory.impl.ConcurrentLimitedMemoryCache
+	 * ConcurrentLimitedMemoryCache} with limited memory cache size ( {@link Builder#DEFAULT_MEMORY_CACHE_SIZE this} bytes).
+	 * Earlier versions used {@link com.nostra13.universalimageloader.cache.memory.impl.UsingFreqLimitedMemoryCache
+	 * UsingFreqLimitedMemoryCache} which also keeps weak references to deleted bitmaps; set it by
+	 * {@link Builder#memoryCache(MemoryCacheAware)} to keep that behaviour.</li>
+	 * <li>bitmapPoolSize = 0 (bitmaps aren't reused)</li>
+	 * <li>bitmapMemoryBudget = half of maximum heap size</li>
 	 * <li>discCache = {@link com.nostra13.universalimageloader.cache.disc.impl.UnlimitedDiscCache UnlimitedDiscCache}</li>
+	 * <li>thumbnailDiscCache = null (decoded images of reduced size aren't cached on disc)</li>
 	 * <li>defaultDisplayImageOptions = {@link DisplayImageOptions#createSimple() Simple options}</li>
 	 * </ul>
 	 * */
@@ -88,10 +120,18 @@ public final class ImageLoaderConfiguration {
 		public static final int DEFAULT_HTTP_CONNECTION_TIMEOUT = 5000;
 		/** {@value} milliseconds */
 		public static final int DEFAULT_HTTP_READ_TIMEOUT = 20000;
+		/** {@value} percents */
+		public static final int DEFAULT_CANCELLED_DOWNLOAD_COMPLETION_THRESHOLD = 75;
 		/** {@value} */
 		public static final int DEFAULT_THREAD_POOL_SIZE = 5;
 		/** {@value} */
+		public static final int DEFAULT_DISC_THREAD_POOL_SIZE = 2;
+		/** {@value} */
 		public static final int DEFAULT_THREAD_PRIORITY = Thread.NORM_PRIORITY - 1;
+		/** {@link QueueProcessingType#LIFO LIFO} */
+		public static final QueueProcessingType DEFAULT_TASK_PROCESSING_TYPE = QueueProcessingType.LIFO;
+		/** {@value} */
+		public static final int DEFAULT_TASK_QUEUE_SIZE = 100;
 		/** {@value} bytes */
 		public static final int DEFAULT_MEMORY_CACHE_SIZE = 2000000;
 
@@ -101,11 +141,21 @@ public final class ImageLoaderConfiguration {
 		private int maxImageHeightForMemoryCache = 0;
 		private int httpConnectTimeout = DEFAULT_HTTP_CONNECTION_TIMEOUT;
 		private int httpReadTimeout = DEFAULT_HTTP_READ_TIMEOUT;
+		private int cancelledDownloadCompletionThreshold = DEFAULT_CANCELLED_DOWNLOAD_COMPLETION_THRESHOLD;
 		private int threadPoolSize = DEFAULT_THREAD_POOL_SIZE;
+		private int discThreadPoolSize = DEFAULT_DISC_THREAD_POOL_SIZE;
+		private int decodingThreadPoolSize = 0;
 		private int threadPriority = DEFAULT_THREAD_PRIORITY;
+		private QueueProcessingType tasksProcessingType = DEFAULT_TASK_PROCESSING_TYPE;
+		private int taskQueueSize = DEFAULT_TASK_QUEUE_SIZE;
 		private boolean allowCacheImageMultipleSizesInMemory = true;
 		private MemoryCacheAware<String, Bitmap> memoryCache = null;
+		private int bitmapPoolSize = 0;
+		private BitmapPool bitmapPool = null;
+		private int bitmapMemoryBudget = 0;
+		private MemoryGovernor memoryGovernor = null;
 		private DiscCacheAware discCache = null;
+		private DiscCacheAware thumbnailDiscCache = null;
 		private DisplayImageOptions defaultDisplayImageOptions = null;
 
 		public Builder(Context context) {
@@ -151,7 +201,20 @@ public final class ImageLoaderConfiguration {
 		}
 
 		/**
-		 * Sets thread pool size for image display tasks.<br />
+		 * Image downloading is cancelled when image isn't needed anymore for any {@link android.widget.ImageView
+		 * ImageView}. But if downloaded part of image has already reached this threshold (in percents of image size)
+		 * then downloading is completed and image is cached on disc. Pass value greater than 100 to cancel all
+		 * downloads.<br />
+		 * Default value - {@link #DEFAULT_CANCELLED_DOWNLOAD_COMPLETION_THRESHOLD this}
+		 * */
+		public Builder cancelledDownloadCompletionThreshold(int percents) {
+			cancelledDownloadCompletionThreshold = percents;
+			return this;
+		}
+
+		/**
+		 * Sets thread pool size for image downloading (from Internet or file system). Downloading threads mostly wait
+		 * for network so this pool can be larger than count of processors.<br />
 		 * Default value - {@link #DEFAULT_THREAD_POOL_SIZE this}
 		 * */
 		public Builder threadPoolSize(int threadPoolSize) {
@@ -159,6 +222,25 @@ public final class ImageLoaderConfiguration {
 			return this;
 		}
 
+		/**
+		 * Sets thread pool size for reading of images cached on disc.<br />
+		 * Default value - {@link #DEFAULT_DISC_THREAD_POOL_SIZE this}
+		 * */
+		public Builder discThreadPoolSize(int discThreadPoolSize) {
+			this.discThreadPoolSize = discThreadPoolSize;
+			return this;
+		}
+
+		/**
+		 * Sets thread pool size for image decoding. Decoding is CPU bound so there is no sense to set it greater than
+		 * count of device processors.<br />
+		 * Default value - count of available processors
+		 * */
+		public Builder decodingThreadPoolSize(int decodingThreadPoolSize) {
+			this.decodingThreadPoolSize = decodingThreadPoolSize;
+			return this;
+		}
+
 		/**
 		 * Sets the priority for image loading threads. Must be <b>NOT</b> greater than {@link Thread#MAX_PRIORITY} or
 		 * less than {@link Thread#MIN_PRIORITY}<br />
@@ -177,6 +259,28 @@ public final class ImageLoaderConfiguration {
 			return this;
 		}
 
+		/**
+		 * Sets processing order of queued display image tasks which have equal
+		 * {@linkplain DisplayImageOptions.Builder#priority(int) priority}.<br />
+		 * Default value - {@link #DEFAULT_TASK_PROCESSING_TYPE this}
+		 * */
+		public Builder tasksProcessingOrder(QueueProcessingType tasksProcessingType) {
+			this.tasksProcessingType = tasksProcessingType;
+			return this;
+		}
+
+		/**
+		 * Sets maximum count of display image tasks which wait for execution in each task queue. If queue exceeds this
+		 * limit then the oldest task with the lowest {@linkplain DisplayImageOptions.Builder#priority(int) priority}
+		 * is dropped (its image won't be displayed until the next display call for its
+		 * {@link android.widget.ImageView ImageView}). Prefetching tasks aren't counted and aren't dropped.<br />
+		 * Default value - {@link #DEFAULT_TASK_QUEUE_SIZE this}
+		 * */
+		public Builder taskQueueSize(int taskQueueSize) {
+			this.taskQueueSize = taskQueueSize;
+			return this;
+		}
+
 		/**
 		 * When you display an image in a small {@link android.widget.ImageView ImageView} and later you try to display
 		 * this image (from identical URL) in a larger {@link android.widget.ImageView ImageView} so decoded image of
@@ -194,19 +298,23 @@ public final class ImageLoaderConfiguration {
 		 * Sets maximum memory cache size for {@link android.graphics.Bitmap bitmaps} (in bytes).<br />
 		 * Default value - {@link #DEFAULT_MEMORY_CACHE_SIZE this}<br />
 		 * <b>NOTE:</b> If you use this method then
-		 * {@link com.nostra13.universalimageloader.cache.memory.impl.UsingFreqLimitedMemoryCache UsingFreqLimitedCache} will
-		 * be used as memory cache. You can use {@link #memoryCache(MemoryCacheAware)} method for introduction your own
-		 * implementation of {@link MemoryCacheAware}.
+		 * {@link com.nostra13.universalimageloader.cache.memory.impl.ConcurrentLimitedMemoryCache
+		 * ConcurrentLimitedMemoryCache} will be used as memory cache. You can use {@link #memoryCache(MemoryCacheAware)}
+		 * method for introduction your own implementation of {@link MemoryCacheAware}.
 		 */
 		public Builder memoryCacheSize(int memoryCacheSize) {
-			this.memoryCache = new UsingFreqLimitedMemoryCache(memoryCacheSize);
+			this.memoryCache = new ConcurrentLimitedMemoryCache(memoryCacheSize);
 			return this;
 		}
 
 		/**
 		 * Sets memory cache for {@link android.graphics.Bitmap bitmaps}.<br />
-		 * Default value - {@link com.nostra13.universalimageloader.cache.memory.impl.UsingFreqLimitedMemoryCache
-		 * UsingFreqLimitedCache} with limited memory cache size (size = {@link #DEFAULT_MEMORY_CACHE_SIZE this})<br />
+		 * Default value - {@link com.nostra13.universalimageloader.cache.memory.impl.ConcurrentLimitedMemoryCache
+		 * ConcurrentLimitedMemoryCache} with limited memory cache size (size = {@link #DEFAULT_MEMORY_CACHE_SIZE this}). It
+		 * keeps only strong references, so bitmaps deleted from cache can't be got from it anymore. Set
+		 * {@link com.nostra13.universalimageloader.cache.memory.impl.UsingFreqLimitedMemoryCache
+		 * UsingFreqLimitedMemoryCache} (default memory cache of earlier versions) if weak references to deleted bitmaps
+		 * should be kept.<br />
 		 * <b>NOTE:</b> You can use {@link #memoryCacheSize(int)} method instead of this method to simplify memory cache
 		 * tuning.
 		 */
@@ -215,6 +323,34 @@ public final class ImageLoaderConfiguration {
 			return this;
 		}
 
+		/**
+		 * Sets maximum size of {@linkplain BitmapPool pool of bitmaps} which are reused for decoding of new images (in
+		 * bytes). Bitmaps evicted from memory cache come into the pool when they aren't displayed in any
+		 * {@link android.widget.ImageView ImageView} anymore, so new bitmaps are rarely allocated during list
+		 * scrolling.<br />
+		 * Default value - 0 (bitmaps aren't reused)<br />
+		 * <b>NOTE:</b> Bitmaps are reused only on Android 3.0+ and only if memory cache is a
+		 * {@link LimitedMemoryCacheAware} (it's true for {@linkplain #memoryCacheSize(int) default memory cache}).
+		 * Decoded bitmaps are mutable if bitmap pool is used.
+		 */
+		public Builder bitmapPoolSize(int bitmapPoolSize) {
+			this.bitmapPoolSize = bitmapPoolSize;
+			return this;
+		}
+
+		/**
+		 * Sets maximum memory for bitmaps which are decoding now and bitmaps cached in memory (in bytes). Decoding
+		 * which doesn't fit this budget waits for completion of other decodings; memory cache is trimmed only as much
+		 * as it's needed for decoded bitmap.<br />
+		 * Default value - half of maximum heap size<br />
+		 * <b>NOTE:</b> Size of memory cache is considered only if memory cache is a {@link LimitedMemoryCacheAware}
+		 * (it's true for {@linkplain #memoryCacheSize(int) default memory cache}).
+		 */
+		public Builder bitmapMemoryBudget(int bitmapMemoryBudget) {
+			this.bitmapMemoryBudget = bitmapMemoryBudget;
+			return this;
+		}
+
 		/**
 		 * Sets maximum disc cache size for images (in bytes).<br />
 		 * <b>NOTE:</b> If you use this method then
@@ -253,6 +389,33 @@ public final class ImageLoaderConfiguration {
 			return this;
 		}
 
+		/**
+		 * Sets maximum size of disc cache for thumbnails (in bytes). Thumbnail is decoded image of reduced size which is
+		 * saved on disc after decoding, so next time the image of the same size is decoded from small thumbnail file
+		 * instead of large original image.<br />
+		 * <b>NOTE:</b> If you use this method then
+		 * {@link com.nostra13.universalimageloader.cache.disc.impl.TotalSizeLimitedDiscCache TotalSizeLimitedDiscCache}
+		 * will be used as thumbnail disc cache. You can use {@link #thumbnailDiscCache(DiscCacheAware)} method for
+		 * introduction your own implementation of {@link DiscCacheAware}
+		 */
+		public Builder thumbnailDiscCacheSize(int maxCacheSize) {
+			File thumbnailCacheDir = StorageUtils.getThumbnailCacheDirectory(context);
+			this.thumbnailDiscCache = new TotalSizeLimitedDiscCache(thumbnailCacheDir, maxCacheSize);
+			return this;
+		}
+
+		/**
+		 * Sets disc cache for thumbnails (decoded images of reduced size). Thumbnails are cached by memory cache keys
+		 * (image URL and size). Cache must use separate directory.<br />
+		 * If {@link com.nostra13.universalimageloader.cache.disc.impl.RawBitmapDiscCache RawBitmapDiscCache} is used then
+		 * thumbnails are stored as uncompressed pixels and are loaded without decoding.<br />
+		 * Default value - null (thumbnails aren't cached)
+		 */
+		public Builder thumbnailDiscCache(DiscCacheAware thumbnailDiscCache) {
+			this.thumbnailDiscCache = thumbnailDiscCache;
+			return this;
+		}
+
 		/**
 		 * Sets default {@linkplain DisplayImageOptions display image options} for image displaying. These options will
 		 * be used for every {@linkplain ImageLoader#displayImage(String, android.widget.ImageView) image display call}
@@ -276,10 +439,25 @@ public final class ImageLoaderConfiguration {
 				discCache = new UnlimitedDiscCache(cacheDir);
 			}
 			if (memoryCache == null) {
-				memoryCache = new UsingFreqLimitedMemoryCache(DEFAULT_MEMORY_CACHE_SIZE);
+				memoryCache = new ConcurrentLimitedMemoryCache(DEFAULT_MEMORY_CACHE_SIZE);
+			}
+			LimitedMemoryCacheAware<String, Bitmap> limitedMemoryCache = null;
+			if (memoryCache instanceof LimitedMemoryCacheAware) {
+				limitedMemoryCache = (LimitedMemoryCacheAware<String, Bitmap>) memoryCache;
 			}
+			if (bitmapPoolSize > 0 && ImageDecoder.isBitmapReuseSupported() && limitedMemoryCache != null) {
+				bitmapPool = new BitmapPool(bitmapPoolSize);
+				limitedMemoryCache.setEvictionListener(bitmapPool);
+			}
+			if (bitmapMemoryBudget == 0) {
+				bitmapMemoryBudget = (int) (Runtime.getRuntime().maxMemory() / 2);
+			}
+			memoryGovernor = new MemoryGovernor(bitmapMemoryBudget, limitedMemoryCache);
 			if (!allowCacheImageMultipleSizesInMemory) {
-				memoryCache = new FuzzyKeyMemoryCache<String, Bitmap>(memoryCache, MemoryCacheKeyUtil.createFuzzyKeyComparator());
+				memoryCache = new FuzzyKeyMemoryCache<String, Bitmap>(memoryCache, MemoryCacheKeyUtil.createFuzzyKeyGrouper());
+			}
+			if (decodingThreadPoolSize == 0) {
+				decodingThreadPoolSize = Runtime.getRuntime().availableProcessors();
 			}
 			if (defaultDisplayImageOptions == null) {
 				defaultDisplayImageOptions = DisplayImageOptions.createSimple();
@@ -0,0 +1,24 @@
+package com.nostra13.universalimageloader.core;
+
+/**
+ * Quality of decoded image. Image is decoded with reduced quality if there is not enough free memory in heap for
+ * decoding with full quality.
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @see ImageLoader#getImageQuality(android.graphics.Bitmap)
+ */
+public enum ImageQuality {
+	/** Image is decoded as it's defined by {@linkplain DisplayImageOptions display options} */
+	FULL(1),
+	/** Image is decoded with twice greater sample size (each side of bitmap is twice smaller) */
+	REDUCED_SIZE(4),
+	/** Image is decoded with twice greater sample size and with {@link android.graphics.Bitmap.Config#RGB_565 RGB_565} config */
+	REDUCED_SIZE_AND_COLORS(8);
+
+	/** How many times bitmap of full quality is bigger than bitmap of this quality (approximately) */
+	final int sizeFactor;
+
+	private ImageQuality(int sizeFactor) {
+		this.sizeFactor = sizeFactor;
+	}
+}
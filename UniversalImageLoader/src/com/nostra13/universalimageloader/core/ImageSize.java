@@ -5,7 +5,7 @@ package com.nostra13.universalimageloader.core;
  * 
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  */
-class ImageSize {
+public class ImageSize {
 
 	private static final String TO_STRING_PATTERN = "%sx%s";
 
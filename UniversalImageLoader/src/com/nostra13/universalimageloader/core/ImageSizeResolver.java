@@ -0,0 +1,100 @@
+package com.nostra13.universalimageloader.core;
+
+import java.lang.reflect.Field;
+
+import android.util.Log;
+import android.view.ViewGroup.LayoutParams;
+import android.widget.ImageView;
+
+/**
+ * Resolves size of {@link ImageView} which image should be scaled to. Size is taken from view layout (if view is laid
+ * out already), from exact layout parameters or from <b>maxWidth</b>/<b>maxHeight</b> view attributes. These
+ * attributes are read through reflection; reflected fields are looked up once.
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ */
+final class ImageSizeResolver {
+
+	private static final String TAG = ImageSizeResolver.class.getSimpleName();
+
+	/** Size side which isn't known */
+	static final int UNKNOWN = -1;
+
+	private static final Field MAX_WIDTH_FIELD = getImageViewField("mMaxWidth");
+	private static final Field MAX_HEIGHT_FIELD = getImageViewField("mMaxHeight");
+
+	private ImageSizeResolver() {
+	}
+
+	private static Field getImageViewField(String name) {
+		try {
+			Field field = ImageView.class.getDeclaredField(name);
+			field.setAccessible(true);
+			return field;
+		} catch (Exception e) {
+			Log.e(TAG, e.getMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Resolves size which image for ImageView should be scaled to. One of sides can be {@link #UNKNOWN} (then image
+	 * isn't limited by this side). Size is written into passed object, so resolving doesn't allocate anything.
+	 * 
+	 * @return <b>true</b> - if size was resolved; <b>false</b> - if size isn't known (then it can be known after view
+	 *         layout if {@link #isKnownAfterLayout(ImageView)})
+	 */
+	static boolean resolve(ImageView imageView, ImageSize targetSize) {
+		LayoutParams params = imageView.getLayoutParams();
+		int width = getSide(params == null ? LayoutParams.WRAP_CONTENT : params.width, imageView.getWidth()
+				- imageView.getPaddingLeft() - imageView.getPaddingRight(), getMaxSide(MAX_WIDTH_FIELD, imageView));
+		int height = getSide(params == null ? LayoutParams.WRAP_CONTENT : params.height, imageView.getHeight()
+				- imageView.getPaddingTop() - imageView.getPaddingBottom(), getMaxSide(MAX_HEIGHT_FIELD, imageView));
+		if (width == UNKNOWN && height == UNKNOWN) {
+			return false;
+		}
+		targetSize.width = width;
+		targetSize.height = height;
+		return true;
+	}
+
+	/**
+	 * Returns <b>true</b> - if ImageView isn't laid out yet and its size can be {@linkplain #resolve(ImageView, ImageSize)
+	 * resolved} after layout
+	 */
+	static boolean isKnownAfterLayout(ImageView imageView) {
+		if (imageView.getWidth() > 0 || imageView.getHeight() > 0) {
+			return false; // Laid out already
+		}
+		LayoutParams params = imageView.getLayoutParams();
+		return params == null || params.width == LayoutParams.FILL_PARENT || params.height == LayoutParams.FILL_PARENT;
+	}
+
+	/**
+	 * Returns size side: exact size from layout parameters, laid out size (if view fills parent) or maximum size. Laid
+	 * out size of wrapping view isn't used because it's defined by current drawable (i.e. stub image).
+	 */
+	private static int getSide(int paramsSide, int laidOutSide, int maxSide) {
+		int side = UNKNOWN;
+		if (paramsSide > 0) {
+			side = paramsSide;
+		} else if (paramsSide == LayoutParams.FILL_PARENT && laidOutSide > 0) {
+			side = laidOutSide;
+		}
+		if (maxSide != UNKNOWN && (side == UNKNOWN || side > maxSide)) {
+			side = maxSide;
+		}
+		return side;
+	}
+
+	private static int getMaxSide(Field maxSideField, ImageView imageView) {
+		if (maxSideField == null) return UNKNOWN;
+		try {
+			int maxSide = (Integer) maxSideField.get(imageView);
+			return maxSide > 0 && maxSide < Integer.MAX_VALUE ? maxSide : UNKNOWN;
+		} catch (IllegalAccessException e) {
+			Log.e(TAG, e.getMessage(), e);
+			return UNKNOWN;
+		}
+	}
+}
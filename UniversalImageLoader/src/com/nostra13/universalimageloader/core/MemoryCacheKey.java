@@ -0,0 +1,84 @@
+package com.nostra13.universalimageloader.core;
+
+/**
+ * Key of image in memory cache: image URL, target size and {@linkplain ViewScaleType scale type}. Hash code is computed
+ * when key values are changed, so key can be looked up in hash maps without hashing of any strings.
+ * {@linkplain #toString() String key} (which memory cache is looked up by) is built on first request only.<br />
+ * ImageLoader reuses key instance of each ImageView for memory cache lookups. Keys of loading tasks are never changed.
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ */
+final class MemoryCacheKey {
+
+	/** Suffix of key of image scaled to fit inside view (bitmap can be smaller than bitmap for cropping) */
+	private static final String FIT_INSIDE_SUFFIX = "@fit";
+
+	private String url;
+	private int width;
+	private int height;
+	private ViewScaleType scaleType;
+	private int hash;
+	private String stringKey;
+
+	MemoryCacheKey(String url, ImageSize targetSize, ViewScaleType scaleType) {
+		set(url, targetSize.width, targetSize.height, scaleType);
+	}
+
+	/** Creates copy of passed key */
+	MemoryCacheKey(MemoryCacheKey key) {
+		url = key.url;
+		width = key.width;
+		height = key.height;
+		scaleType = key.scaleType;
+		hash = key.hash;
+		stringKey = key.stringKey;
+	}
+
+	void set(String url, int width, int height, ViewScaleType scaleType) {
+		if (this.url != null && matches(url, width, height, scaleType)) {
+			return;
+		}
+		this.url = url;
+		this.width = width;
+		this.height = height;
+		this.scaleType = scaleType;
+		int h = url.hashCode();
+		h = 31 * h + width;
+		h = 31 * h + height;
+		h = 31 * h + scaleType.ordinal();
+		hash = h;
+		stringKey = null;
+	}
+
+	/** Returns <b>true</b> - if key has passed values */
+	boolean matches(String url, int width, int height, ViewScaleType scaleType) {
+		return this.width == width && this.height == height && this.scaleType == scaleType && this.url.equals(url);
+	}
+
+	ViewScaleType getScaleType() {
+		return scaleType;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof MemoryCacheKey)) return false;
+		MemoryCacheKey key = (MemoryCacheKey) o;
+		return hash == key.hash && matches(key.url, key.width, key.height, key.scaleType);
+	}
+
+	/** Returns string presentation of key. It's used as key of image in memory cache and key of image thumbnail on disc. */
+	@Override
+	public String toString() {
+		if (stringKey == null) {
+			String suffix = scaleType == ViewScaleType.FIT_INSIDE ? FIT_INSIDE_SUFFIX : "";
+			stringKey = MemoryCacheKeyUtil.generateKey(url, width, height, suffix);
+		}
+		return stringKey;
+	}
+}
@@ -1,28 +1,33 @@
 package com.nostra13.universalimageloader.core;
 
-import java.util.Comparator;
+import com.nostra13.universalimageloader.cache.memory.KeyGrouper;
 
 /**
- * Utility for generating of keys for memory cache and key comparing
+ * Utility for generating of keys for memory cache and key grouping
  * 
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  */
 class MemoryCacheKeyUtil {
 
-	private static final String URL_AND_SIZE_SEPARATOR = "_";
-	private static final String MEMORY_CACHE_KEY_FORMAT = "%s" + URL_AND_SIZE_SEPARATOR + "%sx%s";
+	private static final char URL_AND_SIZE_SEPARATOR = '_';
+	private static final char WIDTH_AND_HEIGHT_SEPARATOR = 'x';
 
-	static String generateKey(String imageUrl, ImageSize targetSize) {
-		return String.format(MEMORY_CACHE_KEY_FORMAT, imageUrl, targetSize.width, targetSize.height);
+	static String generateKey(String imageUrl, int width, int height, String suffix) {
+		return new StringBuilder(imageUrl.length() + 24).append(imageUrl).append(URL_AND_SIZE_SEPARATOR).append(width)
+				.append(WIDTH_AND_HEIGHT_SEPARATOR).append(height).append(suffix).toString();
 	}
 
-	static Comparator<String> createFuzzyKeyComparator() {
-		return new Comparator<String>() {
+	/** Returns <b>true</b> - if memory cache key was generated for passed image URL (with any size) */
+	static boolean isKeyOfImage(String key, String imageUrl) {
+		return key.startsWith(imageUrl) && key.lastIndexOf(URL_AND_SIZE_SEPARATOR) == imageUrl.length();
+	}
+
+	/** Creates grouper which considers keys of the same image (with any sizes) as equal: image URL is group of key */
+	static KeyGrouper<String> createFuzzyKeyGrouper() {
+		return new KeyGrouper<String>() {
 			@Override
-			public int compare(String key1, String key2) {
-				String imageUrl1 = key1.substring(0, key1.lastIndexOf(URL_AND_SIZE_SEPARATOR));
-				String imageUrl2 = key2.substring(0, key2.lastIndexOf(URL_AND_SIZE_SEPARATOR));
-				return imageUrl1.compareTo(imageUrl2);
+			public Object getGroup(String key) {
+				return key.substring(0, key.lastIndexOf(URL_AND_SIZE_SEPARATOR));
 			}
 		};
 	}
@@ -0,0 +1,76 @@
+package com.nostra13.universalimageloader.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * Passes system memory callbacks of application to {@link ImageLoader#trimMemory(int)}. Implements
+ * <b>android.content.ComponentCallbacks2</b> which is available since Android 4.0 (so it's implemented and registered
+ * through reflection).
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ */
+final class MemoryCallbacks implements InvocationHandler {
+
+	private static final String COMPONENT_CALLBACKS_CLASS = "android.content.ComponentCallbacks";
+	private static final String COMPONENT_CALLBACKS2_CLASS = "android.content.ComponentCallbacks2";
+
+	private static final String ON_TRIM_MEMORY_METHOD = "onTrimMemory";
+	private static final String ON_LOW_MEMORY_METHOD = "onLowMemory";
+
+	private final ImageLoader imageLoader;
+
+	private MemoryCallbacks(ImageLoader imageLoader) {
+		this.imageLoader = imageLoader;
+	}
+
+	/**
+	 * Registers memory callbacks of ImageLoader in application context
+	 * 
+	 * @return <b>true</b> - if callbacks were registered; <b>false</b> - if callbacks aren't supported (Android
+	 *         versions before 4.0)
+	 */
+	static boolean register(Context context, ImageLoader imageLoader) {
+		try {
+			Class<?> callbacksClass = Class.forName(COMPONENT_CALLBACKS_CLASS);
+			Class<?> callbacks2Class = Class.forName(COMPONENT_CALLBACKS2_CLASS);
+			Method registerMethod = Context.class.getMethod("registerComponentCallbacks", callbacksClass);
+			Object callbacks = Proxy.newProxyInstance(callbacks2Class.getClassLoader(), new Class<?>[] { callbacks2Class },
+					new MemoryCallbacks(imageLoader));
+			registerMethod.invoke(context, callbacks);
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		} catch (NoSuchMethodException e) {
+			return false;
+		} catch (IllegalAccessException e) {
+			Log.e(ImageLoader.TAG, e.getMessage(), e);
+			return false;
+		} catch (InvocationTargetException e) {
+			Log.e(ImageLoader.TAG, e.getMessage(), e);
+			return false;
+		}
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) {
+		String methodName = method.getName();
+		if (ON_TRIM_MEMORY_METHOD.equals(methodName)) {
+			imageLoader.trimMemory((Integer) args[0]);
+		} else if (ON_LOW_MEMORY_METHOD.equals(methodName)) {
+			imageLoader.onLowMemory();
+		} else if ("equals".equals(methodName)) {
+			return proxy == args[0];
+		} else if ("hashCode".equals(methodName)) {
+			return System.identityHashCode(proxy);
+		} else if ("toString".equals(methodName)) {
+			return MemoryCallbacks.class.getSimpleName();
+		}
+		return null; // onConfigurationChanged() is ignored
+	}
+}
@@ -0,0 +1,116 @@
+package com.nostra13.universalimageloader.core;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Debug;
+
+import com.nostra13.universalimageloader.cache.memory.LimitedMemoryCacheAware;
+
+/**
+ * Limits memory which is taken by bitmaps: bitmaps which are decoding now and bitmaps cached in memory. Decoding is
+ * admitted only if estimated size of its bitmap fits the budget together with other decoding bitmaps and memory cache.
+ * Otherwise memory cache is trimmed (only as much as it's needed for the bitmap) and if it's not enough then decoding
+ * waits for completion of other decodings.
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ */
+final class MemoryGovernor {
+
+	/** Since this version bitmap pixels are allocated in Java heap */
+	private static final int SDK_VERSION_HONEYCOMB = 11;
+	/** Whether bitmap pixels are allocated in native heap but are counted against Java heap limit */
+	private static final boolean NATIVE_BITMAP_PIXELS;
+
+	static {
+		int sdkVersion;
+		try {
+			sdkVersion = Integer.parseInt(Build.VERSION.SDK);
+		} catch (NumberFormatException e) {
+			sdkVersion = 0;
+		}
+		NATIVE_BITMAP_PIXELS = sdkVersion < SDK_VERSION_HONEYCOMB;
+	}
+
+	private final int budget;
+	/** Can be null if memory cache size isn't known */
+	private final LimitedMemoryCacheAware<String, Bitmap> memoryCache;
+
+	/** Total size of bitmaps which are decoding now */
+	private int inFlightSize = 0;
+
+	/**
+	 * @param budget
+	 *            Maximum memory for bitmaps (in bytes)
+	 * @param memoryCache
+	 *            Memory cache which is trimmed if decoding doesn't fit the budget. Can be null.
+	 */
+	MemoryGovernor(int budget, LimitedMemoryCacheAware<String, Bitmap> memoryCache) {
+		this.budget = budget;
+		this.memoryCache = memoryCache;
+	}
+
+	/**
+	 * Blocks current thread until decoding of bitmap with passed size is admitted. Bitmap which exceeds the budget by
+	 * itself is admitted when there are no other decodings. {@link #release(int)} must be called after decoding.
+	 * 
+	 * @throws InterruptedException
+	 *             if thread was interrupted during waiting
+	 */
+	synchronized void acquire(int bitmapSize) throws InterruptedException {
+		while (true) {
+			int lackingSize = inFlightSize + getCacheSize() + bitmapSize - budget;
+			if (lackingSize <= 0) break;
+			if (trimCache(lackingSize)) continue;
+			if (inFlightSize == 0) break; // Nothing to wait for
+			wait();
+		}
+		inFlightSize += bitmapSize;
+	}
+
+	/** Is called after decoding admitted by {@link #acquire(int)} is completed */
+	synchronized void release(int bitmapSize) {
+		inFlightSize -= bitmapSize;
+		notifyAll();
+	}
+
+	/** Is called if bitmap can't be decoded because of memory lack. Frees memory cache for the bitmap. */
+	synchronized void onOutOfMemory(int bitmapSize) {
+		trimCache(bitmapSize);
+	}
+
+	/** Trims memory cache to passed percent of its current size. Waiting decodings can be admitted after that. */
+	synchronized void trimCacheToPercent(int percent) {
+		int cacheSize = getCacheSize();
+		if (trimCache(cacheSize - (int) ((long) cacheSize * percent / 100))) {
+			notifyAll();
+		}
+	}
+
+	/** Evicts bitmaps from memory cache to free passed size. Returns <b>true</b> if anything was evicted. */
+	private boolean trimCache(int size) {
+		if (memoryCache == null) return false;
+
+		int cacheSize = memoryCache.getCacheSize();
+		if (cacheSize == 0) return false;
+		memoryCache.trimToSize(Math.max(cacheSize - size, 0));
+		return memoryCache.getCacheSize() < cacheSize;
+	}
+
+	/**
+	 * Whether bitmap with passed size can be allocated in heap without memory pressure (bitmap takes no more than half of
+	 * free heap memory). Before Android 3.0 bitmap pixels are taken into account as native heap allocations.
+	 */
+	boolean fitsHeapHeadroom(int bitmapSize) {
+		Runtime runtime = Runtime.getRuntime();
+		long usedMemory = runtime.totalMemory() - runtime.freeMemory();
+		if (NATIVE_BITMAP_PIXELS) {
+			usedMemory += Debug.getNativeHeapAllocatedSize();
+		}
+		long headroom = runtime.maxMemory() - usedMemory;
+		return (long) bitmapSize * 2 <= headroom;
+	}
+
+	private int getCacheSize() {
+		return memoryCache == null ? 0 : memoryCache.getCacheSize();
+	}
+}
@@ -0,0 +1,75 @@
+package com.nostra13.universalimageloader.core;
+
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
+
+/**
+ * Listener-helper for {@linkplain AbsListView list views} ({@link android.widget.ListView ListView},
+ * {@link android.widget.GridView GridView}) which {@linkplain ImageLoader#pause() pauses} ImageLoader's tasks while
+ * list view is scrolling (touch scrolling and/or flinging) and {@linkplain ImageLoader#resume() resumes} them when
+ * scrolling is stopped. It prevents redundant loading and decoding of images which are scrolled away quickly.<br />
+ * Set it to your list view: <code>listView.setOnScrollListener(new PauseOnScrollListener(true, true));</code>
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ */
+public class PauseOnScrollListener implements OnScrollListener {
+
+	private final boolean pauseOnScroll;
+	private final boolean pauseOnFling;
+	private final OnScrollListener externalListener;
+
+	/**
+	 * @param pauseOnScroll
+	 *            Whether {@linkplain ImageLoader#pause() pause ImageLoader} during touch scrolling
+	 * @param pauseOnFling
+	 *            Whether {@linkplain ImageLoader#pause() pause ImageLoader} during fling
+	 */
+	public PauseOnScrollListener(boolean pauseOnScroll, boolean pauseOnFling) {
+		this(pauseOnScroll, pauseOnFling, null);
+	}
+
+	/**
+	 * @param pauseOnScroll
+	 *            Whether {@linkplain ImageLoader#pause() pause ImageLoader} during touch scrolling
+	 * @param pauseOnFling
+	 *            Whether {@linkplain ImageLoader#pause() pause ImageLoader} during fling
+	 * @param customListener
+	 *            Your custom {@link OnScrollListener} for {@linkplain AbsListView list view} which also will be get
+	 *            scroll events
+	 */
+	public PauseOnScrollListener(boolean pauseOnScroll, boolean pauseOnFling, OnScrollListener customListener) {
+		this.pauseOnScroll = pauseOnScroll;
+		this.pauseOnFling = pauseOnFling;
+		externalListener = customListener;
+	}
+
+	@Override
+	public void onScrollStateChanged(AbsListView view, int scrollState) {
+		ImageLoader imageLoader = ImageLoader.getInstance();
+		switch (scrollState) {
+			case OnScrollListener.SCROLL_STATE_IDLE:
+				imageLoader.resume();
+				break;
+			case OnScrollListener.SCROLL_STATE_TOUCH_SCROLL:
+				if (pauseOnScroll) {
+					imageLoader.pause();
+				}
+				break;
+			case OnScrollListener.SCROLL_STATE_FLING:
+				if (pauseOnFling) {
+					imageLoader.pause();
+				}
+				break;
+		}
+		if (externalListener != null) {
+			externalListener.onScrollStateChanged(view, scrollState);
+		}
+	}
+
+	@Override
+	public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+		if (externalListener != null) {
+			externalListener.onScroll(view, firstVisibleItem, visibleItemCount, totalItemCount);
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package com.nostra13.universalimageloader.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Group of images which are prefetched by one
+ * {@linkplain ImageLoader#prefetch(List, ImageSize, DisplayImageOptions, PrefetchTarget) prefetch call}. Can be
+ * cancelled as a whole by {@link ImageLoader#cancelPrefetch(PrefetchGroup)}.
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ */
+public final class PrefetchGroup {
+
+	final PrefetchTarget target;
+	/** Memory cache keys of prefetched images */
+	final List<MemoryCacheKey> memoryCacheKeys = Collections.synchronizedList(new ArrayList<MemoryCacheKey>());
+
+	private volatile boolean cancelled = false;
+
+	PrefetchGroup(PrefetchTarget target) {
+		this.target = target;
+	}
+
+	void cancel() {
+		cancelled = true;
+	}
+
+	/** Whether prefetching of this group was cancelled */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+}
@@ -0,0 +1,12 @@
+package com.nostra13.universalimageloader.core;
+
+/**
+ * Target of image prefetching (see {@link ImageLoader#prefetch(java.util.List, ImageSize, DisplayImageOptions, PrefetchTarget)}).
+ * Can be {@link #DISC_ONLY} (image is only downloaded into disc cache) or {@link #MEMORY} (image is also decoded and
+ * cached in memory)
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ */
+public enum PrefetchTarget {
+	DISC_ONLY, MEMORY
+}
@@ -0,0 +1,12 @@
+package com.nostra13.universalimageloader.core;
+
+/**
+ * Order of processing of display image tasks which have equal {@linkplain DisplayImageOptions.Builder#priority(int)
+ * priority}. Can be {@link #FIFO} (tasks are processed in order of their appearance) or {@link #LIFO} (the latest task
+ * is processed first; appropriate for lists and grids which are scrolled fast)
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ */
+public enum QueueProcessingType {
+	FIFO, LIFO
+}
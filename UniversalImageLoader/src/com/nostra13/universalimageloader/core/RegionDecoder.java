@@ -0,0 +1,123 @@
+package com.nostra13.universalimageloader.core;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory.Options;
+import android.graphics.Rect;
+
+/**
+ * Decodes rectangle regions of image file. Wraps <b>android.graphics.BitmapRegionDecoder</b> which is available since
+ * Android 2.3.3 (so it's used through reflection).
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ */
+final class RegionDecoder {
+
+	private static final String REGION_DECODER_CLASS = "android.graphics.BitmapRegionDecoder";
+
+	private static final Method NEW_INSTANCE_METHOD;
+	private static final Method DECODE_REGION_METHOD;
+	private static final Method GET_WIDTH_METHOD;
+	private static final Method GET_HEIGHT_METHOD;
+	private static final Method RECYCLE_METHOD;
+
+	static {
+		Method newInstance = null;
+		Method decodeRegion = null;
+		Method getWidth = null;
+		Method getHeight = null;
+		Method recycle = null;
+		try {
+			Class<?> decoderClass = Class.forName(REGION_DECODER_CLASS);
+			newInstance = decoderClass.getMethod("newInstance", String.class, boolean.class);
+			decodeRegion = decoderClass.getMethod("decodeRegion", Rect.class, Options.class);
+			getWidth = decoderClass.getMethod("getWidth");
+			getHeight = decoderClass.getMethod("getHeight");
+			recycle = decoderClass.getMethod("recycle");
+		} catch (ClassNotFoundException e) {
+			newInstance = null;
+		} catch (NoSuchMethodException e) {
+			newInstance = null;
+		}
+		NEW_INSTANCE_METHOD = newInstance;
+		DECODE_REGION_METHOD = decodeRegion;
+		GET_WIDTH_METHOD = getWidth;
+		GET_HEIGHT_METHOD = getHeight;
+		RECYCLE_METHOD = recycle;
+	}
+
+	private final Object decoder;
+	private final int width;
+	private final int height;
+
+	private RegionDecoder(Object decoder) throws IOException {
+		this.decoder = decoder;
+		this.width = (Integer) invoke(GET_WIDTH_METHOD);
+		this.height = (Integer) invoke(GET_HEIGHT_METHOD);
+	}
+
+	/** Returns <b>true</b> - if region decoding is supported on this device */
+	static boolean isSupported() {
+		return NEW_INSTANCE_METHOD != null;
+	}
+
+	/**
+	 * Opens image file for region decoding
+	 * 
+	 * @throws IOException
+	 *             if image can't be opened or region decoding isn't {@linkplain #isSupported() supported}
+	 */
+	static RegionDecoder open(String imagePath) throws IOException {
+		if (!isSupported()) {
+			throw new IOException("Region decoding isn't supported");
+		}
+		return new RegionDecoder(invokeMethod(NEW_INSTANCE_METHOD, null, imagePath, Boolean.FALSE));
+	}
+
+	int getWidth() {
+		return width;
+	}
+
+	int getHeight() {
+		return height;
+	}
+
+	/** Decodes region of image. Returns <b>null</b> if region can't be decoded. */
+	Bitmap decodeRegion(Rect region, Options options) throws IOException {
+		return (Bitmap) invoke(DECODE_REGION_METHOD, region, options);
+	}
+
+	/** Releases native decoder. Decoder can't be used after this call. */
+	void recycle() {
+		try {
+			invoke(RECYCLE_METHOD);
+		} catch (IOException e) {
+			// Do nothing
+		}
+	}
+
+	private Object invoke(Method method, Object... args) throws IOException {
+		return invokeMethod(method, decoder, args);
+	}
+
+	private static Object invokeMethod(Method method, Object target, Object... args) throws IOException {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(String.valueOf(cause));
+		} catch (IllegalAccessException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,496 @@
+package com.nostra13.universalimageloader.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory.Options;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.widget.ImageView;
+
+/**
+ * {@link ImageView} for zoomable displaying of very large images. Image displayed by {@link ImageLoader} is used as
+ * base (low resolution) layer. If image is {@linkplain #setZoom(float, float, float) zoomed} then only visible parts
+ * of original image (tiles) are decoded from image file at resolution which is needed for current zoom. Decoded tiles
+ * are kept in small LRU cache, so view costs fixed memory budget regardless of original image size. Tiles which are
+ * visible in view are never evicted from the cache. Region decoder is opened only when image is zoomed.<br />
+ * Original image file is {@linkplain #setTileSource(File) set} by {@link ImageLoader} automatically if image is
+ * {@linkplain DisplayImageOptions.Builder#cacheOnDisc() cached on disc}.<br />
+ * <b>NOTE:</b> Tiles are decoded only on Android 2.3.3+. View works as usual {@link ImageView} on older versions.
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ */
+public class TiledImageView extends ImageView {
+
+	private static final String TAG = TiledImageView.class.getSimpleName();
+
+	/** {@value} pixels */
+	public static final int TILE_SIZE = 256;
+	/** {@value} bytes. Cache can exceed its size if it's needed for tiles visible in view. */
+	public static final int DEFAULT_TILE_CACHE_SIZE = 4000000;
+	/** {@value} */
+	public static final float MAX_ZOOM = 16f;
+
+	/** Decodes tiles of all views one by one */
+	private static final Executor tileExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, TAG);
+			t.setPriority(Thread.NORM_PRIORITY - 1);
+			return t;
+		}
+	});
+
+	private final Paint tilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+	private final Rect baseBounds = new Rect();
+	private final Rect tileBounds = new Rect();
+
+	private TileCache tileCache;
+	/** Tiles which are decoding now */
+	private final Set<TileKey> requestedTiles = new HashSet<TileKey>();
+	/** Tiles which were visible at last drawing. They aren't evicted from {@link #tileCache}. */
+	private final Set<TileKey> visibleTiles = new HashSet<TileKey>();
+	/** Range of tiles visible at last drawing. Decoding of tiles out of the range is skipped. Can be null. */
+	private volatile TileRange visibleTileRange;
+	private Bitmap.Config tileConfig = Bitmap.Config.ARGB_8888;
+
+	private File tileSource;
+	private RegionDecoder regionDecoder;
+	private boolean decoderOpening = false;
+	/** Is changed when region decoder is released. Results of background tasks for previous decoder are ignored. */
+	private volatile int decoderGeneration = 0;
+
+	private float zoom = 1f;
+	private float zoomCenterX = 0.5f;
+	private float zoomCenterY = 0.5f;
+
+	public TiledImageView(Context context) {
+		super(context);
+		tileCache = new TileCache(DEFAULT_TILE_CACHE_SIZE, visibleTiles);
+	}
+
+	public TiledImageView(Context context, AttributeSet attrs) {
+		super(context, attrs);
+		tileCache = new TileCache(DEFAULT_TILE_CACHE_SIZE, visibleTiles);
+	}
+
+	public TiledImageView(Context context, AttributeSet attrs, int defStyle) {
+		super(context, attrs, defStyle);
+		tileCache = new TileCache(DEFAULT_TILE_CACHE_SIZE, visibleTiles);
+	}
+
+	/**
+	 * Sets original image file which tiles are decoded from. Must be called after base image was set into view.
+	 * <b>null</b> - tiles won't be decoded.
+	 */
+	public void setTileSource(File imageFile) {
+		resetTiles();
+		if (RegionDecoder.isSupported()) {
+			tileSource = imageFile;
+		}
+		invalidate();
+	}
+
+	/**
+	 * Zooms image
+	 * 
+	 * @param zoom
+	 *            Zoom relative to the whole image fitting the view (1 - whole image is visible). Value is limited by
+	 *            {@link #MAX_ZOOM}.
+	 * @param centerX
+	 *            X coordinate of image point which should be displayed in view center (0 - left image edge, 1 - right
+	 *            image edge)
+	 * @param centerY
+	 *            Y coordinate of image point which should be displayed in view center (0 - top image edge, 1 - bottom
+	 *            image edge)
+	 */
+	public void setZoom(float zoom, float centerX, float centerY) {
+		this.zoom = Math.max(1f, Math.min(zoom, MAX_ZOOM));
+		this.zoomCenterX = Math.max(0f, Math.min(centerX, 1f));
+		this.zoomCenterY = Math.max(0f, Math.min(centerY, 1f));
+		invalidate();
+	}
+
+	public float getZoom() {
+		return zoom;
+	}
+
+	/** Sets maximum size of decoded tiles kept in memory (in bytes). Default value - {@link #DEFAULT_TILE_CACHE_SIZE this} */
+	public void setTileCacheSize(int tileCacheSize) {
+		tileCache.clear();
+		tileCache = new TileCache(tileCacheSize, visibleTiles);
+		invalidate();
+	}
+
+	/** Sets {@link Bitmap.Config bitmap config} for tile decoding. Default value - {@link Bitmap.Config#ARGB_8888} */
+	public void setTileConfig(Bitmap.Config tileConfig) {
+		this.tileConfig = tileConfig;
+	}
+
+	@Override
+	public void setImageDrawable(Drawable drawable) {
+		super.setImageDrawable(drawable);
+		resetTiles();
+	}
+
+	@Override
+	public void setImageResource(int resId) {
+		super.setImageResource(resId);
+		resetTiles();
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		// Tile source is kept, decoder will be opened again when view is drawn
+		releaseDecoder();
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		Drawable base = getDrawable();
+		if (tileSource == null || base == null || regionDecoder == null) {
+			if (tileSource != null && regionDecoder == null && !decoderOpening && zoom > 1f) {
+				openDecoder(); // Tiles can be needed only for zoomed image
+			}
+			super.onDraw(canvas);
+			return;
+		}
+
+		int imageWidth = regionDecoder.getWidth();
+		int imageHeight = regionDecoder.getHeight();
+		int viewLeft = getPaddingLeft();
+		int viewTop = getPaddingTop();
+		int viewWidth = getWidth() - viewLeft - getPaddingRight();
+		int viewHeight = getHeight() - viewTop - getPaddingBottom();
+		if (imageWidth <= 0 || imageHeight <= 0 || viewWidth <= 0 || viewHeight <= 0) {
+			super.onDraw(canvas);
+			return;
+		}
+
+		float scale = Math.min((float) viewWidth / imageWidth, (float) viewHeight / imageHeight) * zoom;
+		float imageLeft = getImageOffset(viewLeft, viewWidth, imageWidth * scale, zoomCenterX);
+		float imageTop = getImageOffset(viewTop, viewHeight, imageHeight * scale, zoomCenterY);
+
+		canvas.save();
+		canvas.clipRect(viewLeft, viewTop, viewLeft + viewWidth, viewTop + viewHeight);
+
+		baseBounds.set(base.getBounds());
+		base.setBounds(Math.round(imageLeft), Math.round(imageTop), Math.round(imageLeft + imageWidth * scale), Math.round(imageTop + imageHeight * scale));
+		base.draw(canvas);
+		base.setBounds(baseBounds);
+
+		if (base.getIntrinsicWidth() < imageWidth * scale) {
+			// Base image resolution is not enough for current zoom
+			drawTiles(canvas, scale, imageLeft, imageTop, viewLeft, viewTop, viewWidth, viewHeight);
+		}
+		canvas.restore();
+	}
+
+	/** Returns view coordinate of image edge so that image center point is in view center (if it's possible) */
+	private float getImageOffset(int viewStart, int viewSize, float scaledImageSize, float zoomCenter) {
+		if (scaledImageSize <= viewSize) {
+			return viewStart + (viewSize - scaledImageSize) / 2;
+		}
+		float offset = viewStart + viewSize / 2f - zoomCenter * scaledImageSize;
+		return Math.max(viewStart + viewSize - scaledImageSize, Math.min(offset, viewStart));
+	}
+
+	private void drawTiles(Canvas canvas, float scale, float imageLeft, float imageTop, int viewLeft, int viewTop, int viewWidth, int viewHeight) {
+		int imageWidth = regionDecoder.getWidth();
+		int imageHeight = regionDecoder.getHeight();
+
+		// Decode tiles with the largest sample size which keeps resolution enough for current zoom
+		int sampleSize = 1;
+		while (sampleSize * 2 * scale <= 1f) {
+			sampleSize *= 2;
+		}
+		int tileSourceSize = TILE_SIZE * sampleSize;
+
+		float visibleLeft = Math.max(0f, (viewLeft - imageLeft) / scale);
+		float visibleTop = Math.max(0f, (viewTop - imageTop) / scale);
+		float visibleRight = Math.min(imageWidth, (viewLeft + viewWidth - imageLeft) / scale);
+		float visibleBottom = Math.min(imageHeight, (viewTop + viewHeight - imageTop) / scale);
+
+		int firstColumn = (int) (visibleLeft / tileSourceSize);
+		int lastColumn = (int) Math.ceil(visibleRight / tileSourceSize) - 1;
+		int firstRow = (int) (visibleTop / tileSourceSize);
+		int lastRow = (int) Math.ceil(visibleBottom / tileSourceSize) - 1;
+
+		visibleTileRange = new TileRange(sampleSize, firstColumn, lastColumn, firstRow, lastRow);
+		visibleTiles.clear();
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				TileKey key = new TileKey(sampleSize, column, row);
+				visibleTiles.add(key);
+				Bitmap tile = tileCache.get(key);
+				int left = column * tileSourceSize;
+				int top = row * tileSourceSize;
+				int right = Math.min(left + tileSourceSize, imageWidth);
+				int bottom = Math.min(top + tileSourceSize, imageHeight);
+				if (tile == null) {
+					requestTile(key, new Rect(left, top, right, bottom));
+				} else {
+					tileBounds.set(Math.round(imageLeft + left * scale), Math.round(imageTop + top * scale), Math.round(imageLeft + right * scale), Math.round(imageTop + bottom * scale));
+					canvas.drawBitmap(tile, null, tileBounds, tilePaint);
+				}
+			}
+		}
+	}
+
+	private void requestTile(final TileKey key, final Rect region) {
+		if (!requestedTiles.add(key)) return;
+
+		final RegionDecoder decoder = regionDecoder;
+		final int generation = decoderGeneration;
+		final Bitmap.Config config = tileConfig;
+		tileExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (generation != decoderGeneration) return;
+				TileRange range = visibleTileRange;
+				if (range == null || !range.contains(key)) {
+					// View was scrolled or zoomed while tile was waiting for decoding
+					post(new Runnable() {
+						@Override
+						public void run() {
+							onTileSkipped(generation, key);
+						}
+					});
+					return;
+				}
+
+				Options options = new Options();
+				options.inSampleSize = key.sampleSize;
+				options.inPreferredConfig = config;
+				Bitmap tile = null;
+				try {
+					tile = decoder.decodeRegion(region, options);
+				} catch (IOException e) {
+					Log.e(TAG, e.getMessage(), e);
+				} catch (OutOfMemoryError e) {
+					Log.e(TAG, e.getMessage(), e);
+				}
+
+				final Bitmap decodedTile = tile;
+				post(new Runnable() {
+					@Override
+					public void run() {
+						onTileDecoded(generation, key, decodedTile);
+					}
+				});
+			}
+		});
+	}
+
+	/** Is called on UI thread */
+	private void onTileDecoded(int generation, TileKey key, Bitmap tile) {
+		if (generation != decoderGeneration) {
+			if (tile != null) tile.recycle();
+			return;
+		}
+		requestedTiles.remove(key);
+		if (tile != null) {
+			tileCache.put(key, tile);
+			invalidate();
+		}
+	}
+
+	/** Is called on UI thread */
+	private void onTileSkipped(int generation, TileKey key) {
+		if (generation != decoderGeneration) return;
+		requestedTiles.remove(key);
+		if (visibleTiles.contains(key)) {
+			invalidate(); // Tile became visible again, so it's requested again
+		}
+	}
+
+	private void openDecoder() {
+		decoderOpening = true;
+		final File imageFile = tileSource;
+		final int generation = decoderGeneration;
+		tileExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				RegionDecoder decoder = null;
+				if (generation == decoderGeneration) {
+					try {
+						decoder = RegionDecoder.open(imageFile.getAbsolutePath());
+					} catch (IOException e) {
+						Log.e(TAG, e.getMessage(), e);
+					}
+				}
+
+				final RegionDecoder openedDecoder = decoder;
+				post(new Runnable() {
+					@Override
+					public void run() {
+						onDecoderOpened(generation, openedDecoder);
+					}
+				});
+			}
+		});
+	}
+
+	/** Is called on UI thread */
+	private void onDecoderOpened(int generation, RegionDecoder decoder) {
+		if (generation != decoderGeneration) {
+			if (decoder != null) decoder.recycle();
+			return;
+		}
+		decoderOpening = false;
+		if (decoder == null) {
+			// Image file can't be decoded by regions. Display base image only.
+			tileSource = null;
+		} else {
+			regionDecoder = decoder;
+		}
+		invalidate();
+	}
+
+	private void resetTiles() {
+		if (tileCache == null) return; // View is being constructed
+
+		releaseDecoder();
+		tileSource = null;
+		zoom = 1f;
+		zoomCenterX = 0.5f;
+		zoomCenterY = 0.5f;
+	}
+
+	/** Releases region decoder and decoded tiles. Decoding tasks for released decoder are ignored. */
+	private void releaseDecoder() {
+		decoderGeneration++;
+		decoderOpening = false;
+		tileCache.clear();
+		requestedTiles.clear();
+		visibleTiles.clear();
+		visibleTileRange = null;
+		if (regionDecoder != null) {
+			final RegionDecoder decoder = regionDecoder;
+			regionDecoder = null;
+			// Decoder is recycled after all queued decoding tasks
+			tileExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					decoder.recycle();
+				}
+			});
+		}
+	}
+
+	/** Identifies tile: sample size and position in grid of tiles of this sample size */
+	private static final class TileKey {
+		final int sampleSize;
+		final int column;
+		final int row;
+
+		TileKey(int sampleSize, int column, int row) {
+			this.sampleSize = sampleSize;
+			this.column = column;
+			this.row = row;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof TileKey)) return false;
+			TileKey key = (TileKey) o;
+			return sampleSize == key.sampleSize && column == key.column && row == key.row;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = sampleSize;
+			result = 31 * result + column;
+			result = 31 * result + row;
+			return result;
+		}
+	}
+
+	/** Range of tiles of one sample size (columns and rows inclusive) */
+	private static final class TileRange {
+		final int sampleSize;
+		final int firstColumn;
+		final int lastColumn;
+		final int firstRow;
+		final int lastRow;
+
+		TileRange(int sampleSize, int firstColumn, int lastColumn, int firstRow, int lastRow) {
+			this.sampleSize = sampleSize;
+			this.firstColumn = firstColumn;
+			this.lastColumn = lastColumn;
+			this.firstRow = firstRow;
+			this.lastRow = lastRow;
+		}
+
+		boolean contains(TileKey key) {
+			return key.sampleSize == sampleSize && key.column >= firstColumn && key.column <= lastColumn && key.row >= firstRow
+					&& key.row <= lastRow;
+		}
+	}
+
+	/**
+	 * LRU cache of decoded tiles limited by total tiles size. Visible tiles aren't evicted, otherwise they would be
+	 * decoded again at next drawing. Is used on UI thread only.
+	 */
+	private static final class TileCache {
+		private final int sizeLimit;
+		private int size = 0;
+		private final Map<TileKey, Bitmap> tiles = new LinkedHashMap<TileKey, Bitmap>(16, 0.75f, true);
+		private final Set<TileKey> visibleTiles;
+
+		TileCache(int sizeLimit, Set<TileKey> visibleTiles) {
+			this.sizeLimit = sizeLimit;
+			this.visibleTiles = visibleTiles;
+		}
+
+		Bitmap get(TileKey key) {
+			return tiles.get(key);
+		}
+
+		void put(TileKey key, Bitmap tile) {
+			Bitmap previous = tiles.put(key, tile);
+			if (previous != null) {
+				size -= getSize(previous);
+				previous.recycle();
+			}
+			size += getSize(tile);
+
+			Iterator<Map.Entry<TileKey, Bitmap>> it = tiles.entrySet().iterator();
+			while (size > sizeLimit && it.hasNext()) {
+				Map.Entry<TileKey, Bitmap> eldest = it.next();
+				if (eldest.getValue() == tile) break;
+				if (visibleTiles.contains(eldest.getKey())) continue;
+				it.remove();
+				size -= getSize(eldest.getValue());
+				eldest.getValue().recycle();
+			}
+		}
+
+		void clear() {
+			for (Bitmap tile : tiles.values()) {
+				tile.recycle();
+			}
+			tiles.clear();
+			size = 0;
+		}
+
+		private int getSize(Bitmap tile) {
+			return tile.getRowBytes() * tile.getHeight();
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package com.nostra13.universalimageloader.core;
+
+import android.widget.ImageView;
+import android.widget.ImageView.ScaleType;
+
+/**
+ * Type of image scaling into view. Defines which size of decoded image is sufficient for view.
+ * 
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ */
+enum ViewScaleType {
+	/** Image is scaled to fit inside view, so it's enough if at least one image side isn't less than view side */
+	FIT_INSIDE,
+	/** Image is scaled to cover view (or isn't scaled at all), so both image sides mustn't be less than view sides */
+	CROP;
+
+	/** Returns scale type corresponding to {@link ScaleType} of ImageView */
+	static ViewScaleType fromImageView(ImageView imageView) {
+		switch (imageView.getScaleType()) {
+			case FIT_CENTER:
+			case FIT_START:
+			case FIT_END:
+			case CENTER_INSIDE:
+				return FIT_INSIDE;
+			default:
+				return CROP;
+		}
+	}
+}
@@ -15,14 +15,50 @@ public final class FileUtils {
 	}
 
 	public static void copyStream(InputStream is, OutputStream os) throws IOException {
+		copyStream(is, os, -1, null);
+	}
+
+	/**
+	 * Copies stream, notifies listener about copying progress and stops copying if listener asks it.
+	 * 
+	 * @param is
+	 *            Input stream
+	 * @param os
+	 *            Output stream
+	 * @param total
+	 *            Expected count of bytes in input stream (-1 if unknown)
+	 * @param listener
+	 *            Listener of copying progress. Can be null.
+	 * @return <b>true</b> - if stream was copied completely; <b>false</b> - if copying was interrupted by listener
+	 * @throws IOException
+	 */
+	public static boolean copyStream(InputStream is, OutputStream os, int total, CopyListener listener) throws IOException {
 		final int buffer_size = 1024;
 		byte[] bytes = new byte[buffer_size];
+		int current = 0;
 		while (true) {
 			int count = is.read(bytes, 0, buffer_size);
 			if (count == -1) {
 				break;
 			}
 			os.write(bytes, 0, count);
+			current += count;
+			if (listener != null && !listener.onBytesCopied(current, total)) {
+				return false;
+			}
 		}
+		return true;
+	}
+
+	/** Listener of stream copying progress */
+	public static interface CopyListener {
+		/**
+		 * @param current
+		 *            Count of already copied bytes
+		 * @param total
+		 *            Expected total count of bytes (-1 if unknown)
+		 * @return <b>true</b> - if copying should be continued; <b>false</b> - if copying should be interrupted
+		 */
+		boolean onBytesCopied(int current, int total);
 	}
 }
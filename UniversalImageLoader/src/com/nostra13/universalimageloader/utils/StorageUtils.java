@@ -17,6 +17,7 @@ import android.util.Log;
 public final class StorageUtils {
 
 	private static final String INDIVIDUAL_DIR_NAME = "uil-images";
+	private static final String THUMBNAIL_DIR_NAME = "uil-thumbnails";
 
 	private StorageUtils() {
 	}
@@ -61,6 +62,27 @@ public final class StorageUtils {
 		return individualCacheDir;
 	}
 
+	/**
+	 * Returns application cache directory for decoded images of reduced size (thumbnails) which are cached by
+	 * ImageLoader. Cache directory will be created on SD card
+	 * <i>("/Android/data/[app_package_name]/cache/uil-thumbnails")</i> if card is mounted. Else - Android defines cache
+	 * directory on device's file system.
+	 * 
+	 * @param context
+	 *            Application context
+	 * @return Cache {@link File directory}
+	 */
+	public static File getThumbnailCacheDirectory(Context context) {
+		File cacheDir = getCacheDirectory(context);
+		File thumbnailCacheDir = new File(cacheDir, THUMBNAIL_DIR_NAME);
+		if (!thumbnailCacheDir.exists()) {
+			if (!thumbnailCacheDir.mkdir()) {
+				thumbnailCacheDir = cacheDir;
+			}
+		}
+		return thumbnailCacheDir;
+	}
+
 	private static File getExternalCacheDir(Context context) {
 		File dataDir = new File(new File(Environment.getExternalStorageDirectory(), "Android"), "data");
 		File appCacheDir = new File(new File(dataDir, context.getPackageName()), "cache");
@@ -32,6 +32,7 @@ public class ImageGalleryActivity extends BaseActivity {
 			.showStubImage(R.drawable.stub_image)
 			.cacheInMemory()
 			.cacheOnDisc()
+			.displayPreviewFirst()
 			.build();
 
 		gallery = (Gallery) findViewById(R.id.gallery);
@@ -12,6 +12,7 @@ import android.widget.ListView;
 import android.widget.TextView;
 
 import com.nostra13.universalimageloader.core.DisplayImageOptions;
+import com.nostra13.universalimageloader.core.PauseOnScrollListener;
 
 /**
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
@@ -38,6 +39,7 @@ public class ImageListActivity extends BaseActivity {
 
 		ListView listView = (ListView) findViewById(android.R.id.list);
 		listView.setAdapter(new ItemAdapter());
+		listView.setOnScrollListener(new PauseOnScrollListener(false, true));
 		listView.setOnItemClickListener(new OnItemClickListener() {
 			@Override
 			public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
@@ -6,19 +6,22 @@ import android.support.v4.view.PagerAdapter;
 import android.support.v4.view.ViewPager;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.View.OnClickListener;
 import android.widget.FrameLayout;
-import android.widget.ImageView;
 import android.widget.ProgressBar;
 
 import com.nostra13.universalimageloader.core.DecodingType;
 import com.nostra13.universalimageloader.core.DisplayImageOptions;
 import com.nostra13.universalimageloader.core.ImageLoadingListener;
+import com.nostra13.universalimageloader.core.TiledImageView;
 
 /**
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  */
 public class ImagePagerActivity extends BaseActivity {
 
+	private static final float CLICK_ZOOM = 4f;
+
 	private ViewPager pager;
 
 	private DisplayImageOptions options;
@@ -35,6 +38,7 @@ public class ImagePagerActivity extends BaseActivity {
 			.showImageForEmptyUrl(R.drawable.image_for_empty_url)
 			.cacheOnDisc()
 			.decodingType(DecodingType.MEMORY_SAVING)
+			.displayPreviewFirst()
 			.build();
 
 		pager = (ViewPager) findViewById(R.id.pager);
@@ -69,7 +73,7 @@ public class ImagePagerActivity extends BaseActivity {
 		@Override
 		public Object instantiateItem(View view, int position) {
 			final FrameLayout imageLayout = (FrameLayout) inflater.inflate(R.layout.item_pager_image, null);
-			final ImageView imageView = (ImageView) imageLayout.findViewById(R.id.image);
+			final TiledImageView imageView = (TiledImageView) imageLayout.findViewById(R.id.image);
 			final ProgressBar spinner = (ProgressBar) imageLayout.findViewById(R.id.loading);
 
 			imageLoader.displayImage(images[position], imageView, options, new ImageLoadingListener() {
@@ -90,6 +94,14 @@ public class ImagePagerActivity extends BaseActivity {
 				}
 			});
 
+			imageView.setOnClickListener(new OnClickListener() {
+				@Override
+				public void onClick(View v) {
+					float zoom = imageView.getZoom() > 1f ? 1f : CLICK_ZOOM;
+					imageView.setZoom(zoom, 0.5f, 0.5f);
+				}
+			});
+
 			((ViewPager) view).addView(imageLayout, 0);
 			return imageLayout;
 		}
@@ -23,6 +23,7 @@ public class UILApplication extends Application {
 			.threadPriority(Thread.NORM_PRIORITY - 2)
 			.memoryCacheSize(1500000) // 1.5 Mb
 			.discCacheSize(50000000) // 50 Mb
+			.thumbnailDiscCacheSize(5000000) // 5 Mb
 			.httpReadTimeout(10000) // 10 s
 			.denyCacheImageMultipleSizesInMemory()
 			.build();
@@ -30,4 +31,4 @@ public class UILApplication extends Application {
 		ImageLoader.getInstance().init(config);
 		ImageLoader.getInstance().enableLogging(); // Not necessary in common
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file